@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262;
+
+import static com.github.anba.test262.util.Resources.loadConfiguration;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.configuration.Configuration;
+
+/**
+ * Shared setup for all benchmarks
+ *
+ * @author André Bargull
+ *
+ */
+public final class Benchmarks {
+    private Benchmarks() {
+    }
+
+    public static final String TEST_SUITE = "test.suite.test262";
+
+    /**
+     * Loads the default configuration
+     */
+    public static Configuration configuration() {
+        return loadConfiguration("resource:test262.properties");
+    }
+
+    /**
+     * Collects all test cases from the test suite
+     */
+    public static List<Object[]> testCases(Configuration configuration)
+            throws IOException {
+        return BaseTest262.collectTestCases(configuration.subset(TEST_SUITE));
+    }
+
+    /**
+     * Returns a representative sample of {@code size} test cases, test cases
+     * are evenly picked from the sorted list of all test cases
+     */
+    public static List<Object[]> sample(Configuration configuration, int size)
+            throws IOException {
+        List<Object[]> all = new ArrayList<>(testCases(configuration));
+        Collections.sort(all, new Comparator<Object[]>() {
+            @Override
+            public int compare(Object[] o1, Object[] o2) {
+                return o1[1].toString().compareTo(o2[1].toString());
+            }
+        });
+        List<Object[]> sample = new ArrayList<>(size);
+        int step = Math.max(all.size() / Math.max(size, 1), 1);
+        for (int i = 0; i < all.size() && sample.size() < size; i += step) {
+            sample.add(all.get(i));
+        }
+        return sample;
+    }
+}
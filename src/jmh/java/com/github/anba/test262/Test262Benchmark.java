@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.Configuration;
+import org.junit.runner.JUnitCore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.anba.test262.util.LabelledParameterized;
+
+/**
+ * Benchmarks for test discovery and the complete setUp/test/tearDown cycle of
+ * {@link Test262}
+ *
+ * @author André Bargull
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class Test262Benchmark {
+    @Param({ "100" })
+    public int sampleSize;
+
+    private Configuration configuration;
+
+    /**
+     * Sample test cases for {@link SampleRunner}
+     */
+    private static List<Object[]> sample;
+
+    /**
+     * {@link LabelledParameterized} which only runs the sample test cases
+     */
+    public static final class SampleRunner extends LabelledParameterized {
+        public SampleRunner() throws Throwable {
+            super(Test262.class);
+        }
+
+        @Override
+        protected List<Object[]> retrieveParams() {
+            return sample;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        configuration = Benchmarks.configuration();
+        sample = Benchmarks.sample(configuration, sampleSize);
+    }
+
+    @Benchmark
+    public void collectTestCases(Blackhole bh) throws IOException {
+        bh.consume(Benchmarks.testCases(configuration));
+    }
+
+    @Benchmark
+    public void run(Blackhole bh) throws Throwable {
+        bh.consume(new JUnitCore().run(new SampleRunner()));
+    }
+}
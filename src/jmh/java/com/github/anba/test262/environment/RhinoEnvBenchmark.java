@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.environment;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.Configuration;
+import org.mozilla.javascript.EvaluatorException;
+import org.mozilla.javascript.RhinoException;
+import org.mozilla.javascript.ast.AstRoot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.anba.test262.Benchmarks;
+import com.github.anba.test262.environment.Environments.EnvironmentProvider;
+import com.github.anba.test262.util.Functional.Tuple2;
+import com.github.anba.test262.util.SourceFile;
+import com.github.anba.test262.util.Test262Info;
+
+/**
+ * Benchmarks for the individual {@link RhinoEnv} pipeline steps, each
+ * operation processes the complete sample of test files
+ *
+ * @author André Bargull
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class RhinoEnvBenchmark {
+    @Param({ "100" })
+    public int sampleSize;
+
+    private EnvironmentProvider<GlobalObject> provider;
+    private final List<String> names = new ArrayList<>();
+    private final List<SourceFile> sources = new ArrayList<>();
+    private RhinoEnv<?> environment;
+
+    /**
+     * Parsed sample files, re-created for every invocation since compilation
+     * modifies the AST
+     */
+    @State(Scope.Thread)
+    public static class Parsed {
+        private final List<AstRoot> asts = new ArrayList<>();
+        private RhinoEnv<?> environment;
+
+        @Setup(Level.Invocation)
+        public void setUp(RhinoEnvBenchmark benchmark) throws IOException {
+            environment = benchmark.newEnvironment();
+            asts.clear();
+            for (int i = 0, len = benchmark.sources.size(); i < len; ++i) {
+                asts.add(environment.parse(benchmark.names.get(i),
+                        benchmark.sources.get(i).newReader())._1());
+            }
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            environment.exit();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        Configuration configuration = Benchmarks.configuration();
+        String encoding = configuration.subset(Benchmarks.TEST_SUITE)
+                .getString("encoding", "UTF-8");
+        provider = Environments.get(configuration);
+        environment = newEnvironment();
+        for (Object[] p : Benchmarks.sample(configuration, sampleSize)) {
+            String name = p[0].toString();
+            SourceFile source = SourceFile.read(Paths.get(p[1].toString()),
+                    encoding);
+            // only files without syntax errors can be compiled and executed
+            Tuple2<AstRoot, List<EvaluatorException>> parsed = environment
+                    .parse(name, source.newReader());
+            if (parsed._2().isEmpty()) {
+                names.add(name);
+                sources.add(source);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        environment.exit();
+    }
+
+    private RhinoEnv<?> newEnvironment() throws IOException {
+        Environment<GlobalObject> env = provider.environment(
+                Benchmarks.TEST_SUITE, "benchmark", Test262Info.empty());
+        env.global().include("sta.js");
+        return (RhinoEnv<?>) env;
+    }
+
+    @Benchmark
+    public void parse(Blackhole bh) throws IOException {
+        for (int i = 0, len = sources.size(); i < len; ++i) {
+            bh.consume(environment.parse(names.get(i), sources.get(i)
+                    .newReader()));
+        }
+    }
+
+    @Benchmark
+    public void compile(Parsed parsed, Blackhole bh) {
+        for (AstRoot ast : parsed.asts) {
+            bh.consume(parsed.environment.compile(ast));
+        }
+    }
+
+    @Benchmark
+    public void execute(Parsed parsed, Blackhole bh) {
+        for (AstRoot ast : parsed.asts) {
+            try {
+                bh.consume(parsed.environment.execute(ast));
+            } catch (RhinoException | AssertionError e) {
+                // negative and failing tests
+                bh.consume(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.anba.test262.Benchmarks;
+
+/**
+ * Benchmarks for {@link Test262Info} parsing
+ *
+ * @author André Bargull
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class Test262InfoBenchmark {
+    @Param({ "100" })
+    public int sampleSize;
+
+    private final List<SourceFile> sources = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Configuration configuration = Benchmarks.configuration();
+        String encoding = configuration.subset(Benchmarks.TEST_SUITE)
+                .getString("encoding", "UTF-8");
+        for (Object[] p : Benchmarks.sample(configuration, sampleSize)) {
+            sources.add(SourceFile.read(Paths.get(p[1].toString()), encoding));
+        }
+    }
+
+    @Benchmark
+    public void from(Blackhole bh) {
+        for (SourceFile source : sources) {
+            bh.consume(Test262Info.from(source));
+        }
+    }
+}
@@ -8,28 +8,54 @@ package com.github.anba.test262;
 
 import static com.github.anba.test262.util.Functional.iterable;
 import static com.github.anba.test262.util.Functional.map;
+import static com.github.anba.test262.util.Resources.applyOverlay;
 import static com.github.anba.test262.util.Resources.loadConfiguration;
 import static java.util.Collections.emptyList;
 import static org.hamcrest.Matchers.anyOf;
 import static org.hamcrest.Matchers.instanceOf;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
+import java.io.Reader;
+import java.io.StringReader;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.configuration.Configuration;
 import org.hamcrest.Matcher;
 import org.hamcrest.TypeSafeMatcher;
+import org.junit.internal.AssumptionViolatedException;
+import org.junit.Rule;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
 
 import com.github.anba.test262.environment.Environment;
+import com.github.anba.test262.environment.Environments;
+import com.github.anba.test262.environment.EnvironmentProviderFactory.Capability;
+import com.github.anba.test262.util.Allocations;
+import com.github.anba.test262.util.Corpus;
 import com.github.anba.test262.util.EcmaErrorMatcher;
+import com.github.anba.test262.util.ExclusionMatcher;
+import com.github.anba.test262.util.IncrementalState;
+import com.github.anba.test262.util.IncrementalState.Result;
+import com.github.anba.test262.util.IncrementalState.Status;
 import com.github.anba.test262.util.LazyInit;
 import com.github.anba.test262.util.Resources;
+import com.github.anba.test262.util.ResultSink;
+import com.github.anba.test262.util.SourceFile;
+import com.github.anba.test262.util.Test262AssertionError;
 import com.github.anba.test262.util.Test262Info;
+import com.github.anba.test262.util.Test262InfoIndex;
+import com.github.anba.test262.util.Timings;
+import com.github.anba.test262.util.Timings.Phase;
 import com.github.anba.test262.util.Functional.Mapper;
 
 /**
@@ -38,23 +64,301 @@ import com.github.anba.test262.util.Functional.Mapper;
  * @author André Bargull
  * 
  */
-public abstract class BaseTest262 {
+public abstract class BaseTest262 implements ResultSink.Details {
+    /**
+     * System property for an overlay configuration file, whose entries
+     * replace the entries from "test262.properties"
+     */
+    public static final String OVERLAY = "test262.overlay";
+
+    /**
+     * Label suffix for tests which are run in strict mode (dual mode only)
+     */
+    public static final String STRICT_SUFFIX = ResultSink.STRICT_SUFFIX;
+
+    // prepended to the test source in strict mode, kept on the first line to
+    // retain line numbers
+    private static final String USE_STRICT = "\"use strict\"; ";
+
+    private final Configuration configuration;
     private final String testsuite;
+    private final String label;
     private final String sourceName;
     private final String path;
+    private final boolean strictMode;
 
     // from configuration
     private final boolean strictSupported;
     private final String encoding;
+    private final String infoIndex;
+    private final String incrementalState;
+    private final boolean incrementalForce;
+    private final long allocationLimit;
+    private final boolean allocationFail;
+    private final boolean parseOnly;
+    private final boolean dualMode;
+
+    // allocated bytes during execute(), -1 if not measured
+    private long allocated = -1;
+
+    // read lazily, shared between info() and execute()
+    private SourceFile source;
+    private Test262Info info;
+    // shared with the other mode of this test, null if not in dual mode
+    private final SharedSource shared;
+
+    /**
+     * Source file and test case information of a test file, shared between
+     * both modes in dual mode
+     */
+    private static final class SharedSource {
+        private int remaining = 2;
+        private SourceFile source;
+        private Test262Info info;
+    }
+
+    private static final int MAX_SHARED_SOURCES = 1024;
+
+    /**
+     * Shared sources of tests whose other mode hasn't been run yet. The map
+     * is bounded, the least recently used entry is evicted if the other mode
+     * is not run at all, e.g. when it's filtered out.
+     */
+    @SuppressWarnings("serial")
+    private static final Map<String, SharedSource> sharedSources = new LinkedHashMap<String, SharedSource>(
+            16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SharedSource> e) {
+            return size() > MAX_SHARED_SOURCES;
+        }
+    };
 
     protected BaseTest262(Configuration configuration, String testsuite,
-            String sourceName, String path) {
+            String label, String path) {
         Configuration c = configuration.subset(testsuite);
+        this.configuration = configuration;
         this.testsuite = testsuite;
-        this.sourceName = sourceName;
+        this.label = label;
+        this.strictMode = label.endsWith(STRICT_SUFFIX);
+        this.sourceName = strictMode ? label.substring(0, label.length()
+                - STRICT_SUFFIX.length()) : label;
         this.path = path;
-        this.strictSupported = c.getBoolean("strict", false);
+        this.strictSupported = c.getBoolean("strict", false)
+                && Environments.capabilities(configuration).contains(
+                        Capability.STRICT_MODE);
         this.encoding = c.getString("encoding", "UTF-8");
+        this.infoIndex = c.getString("info_index", "");
+        this.incrementalState = c.getString("incremental", "");
+        this.incrementalForce = c.getBoolean("incremental.force", false);
+        this.allocationLimit = configuration.getLong("test.allocation.limit",
+                0);
+        this.allocationFail = "fail".equals(configuration.getString(
+                "test.allocation.action", "fail"));
+        this.parseOnly = c.getBoolean("parse_only", false);
+        this.dualMode = c.getBoolean("dual_mode", false);
+        this.shared = dualMode ? sharedSource(path) : null;
+    }
+
+    private static SharedSource sharedSource(String path) {
+        synchronized (sharedSources) {
+            SharedSource shared = sharedSources.get(path);
+            if (shared == null) {
+                shared = new SharedSource();
+                sharedSources.put(path, shared);
+            }
+            return shared;
+        }
+    }
+
+    /**
+     * Releases the shared source after both modes have been run
+     */
+    private void releaseSharedSource() {
+        synchronized (shared) {
+            if (--shared.remaining > 0) {
+                return;
+            }
+        }
+        synchronized (sharedSources) {
+            if (sharedSources.get(path) == shared) {
+                sharedSources.remove(path);
+            }
+        }
+    }
+
+    /**
+     * Records per-test timings including setUp and tearDown if
+     * {@link Timings} are enabled
+     */
+    @Rule
+    public TestRule timings = new TestRule() {
+        @Override
+        public Statement apply(final Statement base, Description description) {
+            if (!Timings.isEnabled()) {
+                return base;
+            }
+            return new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    Timings.begin(getLabel(), getPath());
+                    try {
+                        base.evaluate();
+                    } finally {
+                        Timings.end();
+                    }
+                }
+            };
+        }
+    };
+
+    /**
+     * Releases the source file and test case information shared with the
+     * other mode of this test in dual mode
+     */
+    @Rule
+    public TestRule dualModeSharing = new TestRule() {
+        @Override
+        public Statement apply(final Statement base, Description description) {
+            if (shared == null) {
+                return base;
+            }
+            return new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    try {
+                        base.evaluate();
+                    } finally {
+                        releaseSharedSource();
+                    }
+                }
+            };
+        }
+    };
+
+    /**
+     * Replays the last result if the inputs of the test are unchanged since
+     * the last run, otherwise runs the test and records its result. Only
+     * passed, skipped and failed tests are recorded, timeouts and errors are
+     * not. Only active if an incremental state file is configured. Subclasses need to
+     * place this rule outside of any rule which handles expected exceptions.
+     */
+    protected final TestRule incremental = new TestRule() {
+        @Override
+        public Statement apply(final Statement base, Description description) {
+            if (incrementalState.isEmpty()) {
+                return base;
+            }
+            return new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    IncrementalState state = IncrementalState.open(Paths
+                            .get(incrementalState));
+                    Path path = Paths.get(getPath());
+                    String variant = strictMode ? "strict" : null;
+                    Result last = state.get(path, variant);
+                    if (!incrementalForce
+                            && last != null
+                            && last.getFingerprint().equals(
+                                    fingerprint(last.getIncludes()))) {
+                        last.replay();
+                        return;
+                    }
+                    try {
+                        base.evaluate();
+                    } catch (AssumptionViolatedException e) {
+                        record(state, path, variant, Status.SKIPPED,
+                                e.getMessage());
+                        throw e;
+                    } catch (AssertionError e) {
+                        record(state, path, variant, Status.FAILED,
+                                e.getMessage());
+                        throw e;
+                    } catch (Throwable t) {
+                        // timeouts and other errors aren't deterministic,
+                        // the test is run again next time
+                        state.remove(path, variant);
+                        throw t;
+                    }
+                    record(state, path, variant, Status.PASSED, null);
+                }
+            };
+        }
+    };
+
+    /**
+     * Checks the allocated bytes of the script execution against the
+     * configured allocation budget. Tests which exceed the budget are either
+     * failed or reported on stderr. Failures from the test itself take
+     * precedence.
+     */
+    protected final TestRule allocations = new TestRule() {
+        @Override
+        public Statement apply(final Statement base,
+                final Description description) {
+            if (allocationLimit <= 0 || !Allocations.isSupported()) {
+                return base;
+            }
+            return new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    base.evaluate();
+                    if (allocated > allocationLimit) {
+                        String msg = String.format(
+                                "allocation budget exceeded: %d bytes (limit: %d bytes) [file: %s]",
+                                allocated, allocationLimit, getLabel());
+                        if (allocationFail) {
+                            throw new Test262AssertionError(msg);
+                        }
+                        System.err.println(msg);
+                    }
+                }
+            };
+        }
+    };
+
+    /**
+     * Fingerprint of all test inputs: test file, library files, engine, test
+     * suite settings, exclusions and allocation limits
+     */
+    private String fingerprint(List<Path> includes) throws IOException {
+        Configuration c = configuration.subset(testsuite);
+        String engine = Environments.fingerprint(configuration) + "\0"
+                + strictSupported + "\0"
+                + c.getBoolean("only_excluded", false) + "\0"
+                + exclusionFingerprint(testsuite, c) + "\0"
+                + allocationLimit + "\0" + allocationFail;
+        return IncrementalState.fingerprint(source().getContent(), includes,
+                encoding, engine);
+    }
+
+    private static final ConcurrentMap<String, String> exclusionFingerprints = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the fingerprint of the exclusions of {@code testsuite}, the
+     * exclusions are only loaded once per JVM
+     */
+    private static String exclusionFingerprint(String testsuite,
+            Configuration configuration) throws IOException {
+        String fingerprint = exclusionFingerprints.get(testsuite);
+        if (fingerprint == null) {
+            fingerprint = loadExclusions(configuration).fingerprint();
+            exclusionFingerprints.putIfAbsent(testsuite, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    private void record(IncrementalState state, Path path, String variant,
+            Status status, String message) throws IOException {
+        List<Path> includes = new ArrayList<>(includes());
+        state.put(path, variant, new Result(fingerprint(includes), includes,
+                status, message));
+    }
+
+    /**
+     * Returns the library files which were included by the current test
+     */
+    protected List<Path> includes() {
+        return Collections.emptyList();
     }
 
     /**
@@ -64,6 +368,13 @@ public abstract class BaseTest262 {
         return testsuite;
     }
 
+    /**
+     * Returns the test label, i.e. the source name with the mode suffix
+     */
+    public final String getLabel() {
+        return label;
+    }
+
     /**
      * Returns the test source name
      */
@@ -85,37 +396,271 @@ public abstract class BaseTest262 {
         return strictSupported;
     }
 
+    /**
+     * Returns {@code true} iff each test is run in both modes
+     */
+    protected final boolean isDualMode() {
+        return dualMode;
+    }
+
+    /**
+     * Returns {@code true} iff the test is run in strict mode, only used in
+     * dual mode
+     */
+    protected final boolean isStrictMode() {
+        return strictMode;
+    }
+
+    /**
+     * Returns {@code true} iff the test is run in strict mode, i.e. the strict
+     * variant in dual mode, otherwise tests with the @onlyStrict flag
+     */
+    @Override
+    public final boolean isStrict() {
+        if (dualMode) {
+            return strictMode;
+        }
+        try {
+            return info().isOnlyStrict();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the ECMAScript error name of the script error which caused
+     * {@code failure}, falls back to the exception class-name
+     */
+    @Override
+    public final String getErrorType(Throwable failure) {
+        // script errors are wrapped in AssertionError by the exception
+        // handler
+        Throwable cause = failure;
+        while (cause instanceof AssertionError
+                && !(cause instanceof Test262AssertionError)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof Test262AssertionError) {
+            return "Test262Error";
+        }
+        String name = errorName(cause);
+        return name != null ? name : cause.getClass().getName();
+    }
+
+    /**
+     * Returns the ECMAScript error name of {@code error} or {@code null} if
+     * {@code error} was not thrown by the script
+     */
+    protected String errorName(Throwable error) {
+        return null;
+    }
+
+    /**
+     * Returns the test source file, the file is only read once per test
+     */
+    protected final SourceFile source() throws IOException {
+        if (source == null) {
+            if (shared == null) {
+                source = readSource();
+            } else {
+                synchronized (shared) {
+                    if (shared.source == null) {
+                        shared.source = readSource();
+                    }
+                    source = shared.source;
+                }
+            }
+        }
+        return source;
+    }
+
+    private SourceFile readSource() throws IOException {
+        Timings.enter(Phase.READ);
+        try {
+            return SourceFile.read(Paths.get(getPath()), encoding);
+        } finally {
+            Timings.exit();
+        }
+    }
+
+    /**
+     * Returns a new reader for the test script, the "use strict" directive
+     * is prepended in strict mode
+     */
+    private Reader script() throws IOException {
+        if (strictMode) {
+            return new StringReader(USE_STRICT + source().getContent());
+        }
+        return source().newReader();
+    }
+
+    /**
+     * Returns the test case information, the persistent index is consulted
+     * first if enabled
+     */
     protected final Test262Info info() throws IOException {
+        if (info == null) {
+            if (shared == null) {
+                info = readInfo();
+            } else {
+                synchronized (shared) {
+                    if (shared.info == null) {
+                        shared.info = readInfo();
+                    }
+                    info = shared.info;
+                }
+            }
+        }
+        return info;
+    }
+
+    private Test262Info readInfo() throws IOException {
         Path path = Paths.get(getPath());
-        return Test262Info.from(path, encoding);
+        Test262Info packed = Corpus.lookupInfo(path);
+        if (packed != null) {
+            return packed;
+        }
+        if (infoIndex.isEmpty()) {
+            return parseInfo();
+        }
+        Test262InfoIndex index = Test262InfoIndex.open(Paths.get(infoIndex));
+        Test262Info info = index.get(path);
+        if (info == null) {
+            info = parseInfo();
+            index.put(path, info);
+        }
+        return info;
     }
 
+    private Test262Info parseInfo() throws IOException {
+        SourceFile source = source();
+        Timings.enter(Phase.INFO);
+        try {
+            return Test262Info.from(source);
+        } finally {
+            Timings.exit();
+        }
+    }
+
+    /**
+     * Returns {@code true} if the test only expects a SyntaxError, such tests
+     * can be checked by parsing alone
+     */
+    protected final boolean isParseOnly() throws IOException {
+        Test262Info info = info();
+        return parseOnly && info.isNegative()
+                && "SyntaxError".equals(info.getErrorType());
+    }
+
+    /**
+     * Parses the test without executing it, the first syntax error is thrown
+     */
+    protected final void checkSyntax(Environment<?> environment)
+            throws IOException {
+        environment.checkSyntax(getSourceName(), script());
+    }
+
+    /**
+     * Executes the test without recording the allocated bytes, used to run
+     * the test in additional environments
+     */
+    protected final void evaluate(Environment<?> environment)
+            throws IOException {
+        environment.eval(getSourceName(), script());
+    }
+
+    /**
+     * Executes the test, the allocated bytes are recorded if timings or an
+     * allocation budget are enabled
+     */
     protected final void execute(Environment<?> environment)
             throws IOException {
-        Path path = Paths.get(getPath());
-        InputStream source = Files.newInputStream(path);
-        environment.eval(getSourceName(), source);
+        if (!Timings.isEnabled() && allocationLimit <= 0) {
+            environment.eval(getSourceName(), script());
+            return;
+        }
+        Reader script = script();
+        long start = Allocations.allocatedBytes();
+        try {
+            environment.eval(getSourceName(), script);
+        } finally {
+            allocated = Allocations.allocatedBytes() - start;
+            Timings.allocated(allocated);
+        }
     }
 
     protected static List<Object[]> collectTestCases(Configuration configuration)
             throws IOException {
+        return testCases(configuration, false);
+    }
+
+    /**
+     * Same as {@link #collectTestCases(Configuration)}, except the returned
+     * list is filled while the test directory is still being searched
+     */
+    protected static List<Object[]> streamTestCases(Configuration configuration)
+            throws IOException {
+        return testCases(configuration, true);
+    }
+
+    private static List<Object[]> testCases(Configuration configuration,
+            boolean streaming) throws IOException {
+        // optional packed source corpus, replaces the directory search and
+        // all reads of test and harness files
+        String corpusFile = configuration.getString("corpus", "");
+        Corpus corpus = corpusFile.isEmpty() ? null : Corpus.open(Paths
+                .get(corpusFile));
+
+        // optional list of test cases, replaces the directory search
+        String testList = configuration.getString("test_list", "");
+        if (!testList.isEmpty()) {
+            return Resources.readTestList(Paths.get(testList));
+        }
+
         // base directory to search for test javascript files
         String testpath = configuration.getString("");
 
-        // set of test-case id to exclude from testing
-        List<?> values = configuration.getList("exclude", emptyList());
-
         // if 'true' only the excluded test cases are used, otherwise they're
         // omitted
         boolean only_excluded = configuration
                 .getBoolean("only_excluded", false);
 
-        // optional exclusion pattern
-        String excludeRE = configuration.getString("exclude_re", "");
-        Pattern exclude = Pattern.compile(excludeRE);
+        ExclusionMatcher exclusions = loadExclusions(configuration);
+
+        // in dual mode each test is listed once per mode, both modes share
+        // the source file as long as they're run in the same JVM
+        boolean dualMode = configuration.getBoolean("dual_mode", false);
+        List<String> variants = dualMode ? Arrays.asList("", STRICT_SUFFIX)
+                : Arrays.asList("");
+
+        if (corpus != null) {
+            return Resources.corpusTestCases(corpus, testpath, exclusions,
+                    only_excluded, variants);
+        }
+        if (streaming) {
+            return Resources.streamTestCases(testpath, exclusions,
+                    only_excluded, variants);
+        }
+        return Resources.collectTestCases(testpath, exclusions,
+                only_excluded, variants);
+    }
+
+    /**
+     * Loads the exclusion files and patterns of the test suite configuration
+     */
+    private static ExclusionMatcher loadExclusions(Configuration configuration)
+            throws IOException {
+        // set of test-case id to exclude from testing
+        List<?> values = configuration.getList("exclude", emptyList());
+
+        // optional exclusion patterns
+        List<?> excludeRE = configuration.getList("exclude_re", emptyList());
 
-        return Resources.collectTestCases(testpath, values, only_excluded,
-                exclude);
+        // optional cache file for the compiled exclusion matcher
+        String excludeCache = configuration.getString("exclude_cache", "");
+        return ExclusionMatcher.load(values, excludeRE,
+                excludeCache.isEmpty() ? null : Paths.get(excludeCache));
     }
 
     protected static LazyInit<Configuration> newConfiguration() {
@@ -123,6 +668,10 @@ public abstract class BaseTest262 {
             @Override
             protected Configuration initialize() {
                 Configuration config = loadConfiguration("resource:test262.properties");
+                String overlay = System.getProperty(OVERLAY, "");
+                if (!overlay.isEmpty()) {
+                    applyOverlay(config, overlay);
+                }
                 // test load for required property "test262"
                 config.getString("test262");
                 return config;
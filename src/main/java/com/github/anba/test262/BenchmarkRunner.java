@@ -0,0 +1,197 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262;
+
+import static java.util.Collections.emptyList;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+import com.github.anba.test262.util.Resources;
+import com.github.anba.test262.util.ResultLog;
+import com.github.anba.test262.util.ResultLog.Entry;
+
+/**
+ * Runs the identical test list against several environment providers and
+ * reports the throughput of each one. Every run is started in its own JVM,
+ * one after another, so runs can use different engine builds through their
+ * class path.
+ * <p>
+ * Usage: {@code java -cp <classpath> com.github.anba.test262.BenchmarkRunner}
+ * <p>
+ * The runner is configured through the "test.benchmark.*" entries in
+ * "test262.properties".
+ *
+ * @author André Bargull
+ *
+ */
+public final class BenchmarkRunner {
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.exit(launch() ? 0 : 1);
+    }
+
+    /**
+     * Measurements of a single run
+     */
+    private static final class Run {
+        final String name;
+        final Path dir;
+        int exitCode;
+        long wallNanos;
+        long testNanos;
+        int tests, passed, failed, skipped;
+        boolean finished;
+
+        Run(String name, Path dir) {
+            this.name = name;
+            this.dir = dir;
+        }
+    }
+
+    /**
+     * Runs all configured providers and prints the report, returns
+     * {@code false} if any run didn't finish
+     */
+    private static boolean launch() throws Exception {
+        Configuration configuration = BaseTest262.newConfiguration().get();
+        Configuration c = configuration.subset("test.benchmark");
+        Path dir = Paths.get(c.getString("dir", "target/benchmark"))
+                .toAbsolutePath();
+        List<?> names = c.getList("runs",
+                Collections.<Object> singletonList(configuration.getString(
+                        "test.provider", "rhino")));
+
+        // all runs use the same test list
+        Files.createDirectories(dir);
+        Path testList = dir.resolve("tests.lst");
+        Resources.writeTestList(testList, BaseTest262
+                .collectTestCases(configuration.subset(Test262.TEST_SUITE)));
+
+        List<Run> runs = new ArrayList<>();
+        for (Object o : names) {
+            String name = o.toString();
+            if (name.isEmpty()) {
+                continue;
+            }
+            Configuration rc = c.subset("run." + name);
+            Run run = new Run(name, dir.resolve(name));
+            Files.createDirectories(run.dir);
+            Files.deleteIfExists(run.dir.resolve("results.log"));
+            writeOverlay(run, configuration, rc, testList);
+
+            long start = System.nanoTime();
+            Process process = ShardedRunner.fork(
+                    c.getList("jvm_args", emptyList()),
+                    rc.getString("classpath", ""),
+                    run.dir.resolve("overlay.properties"),
+                    run.dir.resolve("results.log"),
+                    run.dir.resolve("output.log"));
+            run.exitCode = process.waitFor();
+            run.wallNanos = System.nanoTime() - start;
+            collect(run);
+            runs.add(run);
+        }
+        return report(runs);
+    }
+
+    /**
+     * Writes the overlay configuration for {@code run}, the provider defaults
+     * to the run name
+     */
+    private static void writeOverlay(Run run, Configuration configuration,
+            Configuration rc, Path testList) throws IOException {
+        PropertiesConfiguration overlay = Resources
+                .newPropertiesConfiguration();
+        for (Configuration entries : new Configuration[] {
+                configuration.subset("test.benchmark.overlay"),
+                rc.subset("overlay") }) {
+            for (Iterator<?> keys = entries.getKeys(); keys.hasNext();) {
+                String key = keys.next().toString();
+                overlay.setProperty(key, entries.getProperty(key));
+            }
+        }
+        overlay.setProperty("test.provider",
+                rc.getString("provider", run.name));
+        overlay.setProperty(Test262.TEST_SUITE + ".test_list",
+                testList.toString());
+        // measure the actual test execution, no replayed or recorded results
+        overlay.setProperty(Test262.TEST_SUITE + ".incremental", "");
+        overlay.setProperty("test.history", "");
+        overlay.setProperty("test.results", "");
+        Path file = run.dir.resolve("overlay.properties");
+        try (Writer writer = Files.newBufferedWriter(file,
+                StandardCharsets.UTF_8)) {
+            overlay.save(writer);
+        } catch (ConfigurationException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void collect(Run run) throws IOException {
+        for (Entry entry : ResultLog.read(run.dir.resolve("results.log"))) {
+            switch (entry.getStatus()) {
+            case FINISHED:
+                run.finished = true;
+                continue;
+            case STARTED:
+                continue;
+            case PASSED:
+                run.passed += 1;
+                break;
+            case SKIPPED:
+            case IGNORED:
+                run.skipped += 1;
+                break;
+            default:
+                run.failed += 1;
+            }
+            run.tests += 1;
+            run.testNanos += entry.getNanos();
+        }
+    }
+
+    /**
+     * Prints the throughput per run to stdout
+     */
+    private static boolean report(List<Run> runs) {
+        boolean finished = true;
+        System.out.printf("%-20s %8s %8s %8s %8s %10s %10s %10s%n", "run",
+                "tests", "passed", "failed", "skipped", "test [s]",
+                "wall [s]", "tests/s");
+        for (Run run : runs) {
+            System.out.printf(Locale.ROOT,
+                    "%-20s %8d %8d %8d %8d %10.3f %10.3f %10.1f%n", run.name,
+                    run.tests, run.passed, run.failed, run.skipped,
+                    run.testNanos / 1e9, run.wallNanos / 1e9,
+                    run.testNanos > 0 ? run.tests / (run.testNanos / 1e9) : 0);
+        }
+        for (Run run : runs) {
+            if (!run.finished) {
+                finished = false;
+                System.out.printf("run %s exited with code %d, see %s%n",
+                        run.name, run.exitCode, run.dir.resolve("output.log"));
+            }
+        }
+        return finished;
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262;
+
+import static java.util.Collections.emptyList;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.configuration.Configuration;
+
+import com.github.anba.test262.util.Corpus;
+import com.github.anba.test262.util.ExclusionMatcher;
+import com.github.anba.test262.util.Resources;
+
+/**
+ * Packs all test files and harness files into a single {@link Corpus} file,
+ * which is then used for test discovery and loading when
+ * "test.suite.test262.corpus" is set. All test files are packed, exclusions
+ * are still applied when the corpus is used.
+ * <p>
+ * Usage:
+ * {@code java -cp <classpath> com.github.anba.test262.CorpusPacker [file]}
+ * <p>
+ * The corpus file defaults to the configured "test.suite.test262.corpus".
+ *
+ * @author André Bargull
+ *
+ */
+public final class CorpusPacker {
+    private CorpusPacker() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration configuration = BaseTest262.newConfiguration().get();
+        Configuration c = configuration.subset(Test262.TEST_SUITE);
+        String target = args.length > 0 ? args[0] : c.getString("corpus", "");
+        if (target.isEmpty()) {
+            System.err.println("no corpus file configured");
+            System.exit(2);
+        }
+        Path file = Paths.get(target);
+
+        List<Path> tests = new ArrayList<>();
+        for (Object[] testcase : Resources.collectTestCases(c.getString(""),
+                ExclusionMatcher.load(emptyList(), emptyList(), null), false,
+                Arrays.asList(""))) {
+            tests.add(Paths.get((String) testcase[1]));
+        }
+        List<Path> libs = harnessFiles(Paths.get(c.getString("lib_path")));
+
+        long start = System.nanoTime();
+        Corpus.pack(file, tests, libs, c.getString("encoding", "UTF-8"));
+        System.out.printf("packed %d tests and %d harness files into %s "
+                + "(%d bytes, %d ms)%n", tests.size(), libs.size(),
+                file.toAbsolutePath(), Files.size(file),
+                (System.nanoTime() - start) / 1000000);
+    }
+
+    /**
+     * Returns the javascript files of the harness directory in sorted order
+     */
+    private static List<Path> harnessFiles(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir,
+                "*.js")) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+}
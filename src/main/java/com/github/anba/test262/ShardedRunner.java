@@ -0,0 +1,506 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262;
+
+import static java.util.Collections.emptyList;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+
+import com.github.anba.test262.util.Resources;
+import com.github.anba.test262.util.ResultLog;
+import com.github.anba.test262.util.ResultLog.Entry;
+import com.github.anba.test262.util.ResultLog.Status;
+import com.github.anba.test262.util.RuntimeHistory;
+
+/**
+ * Runs {@link Test262} in several forked JVMs ("shards") and merges the
+ * per-shard results into a single surefire-compatible report. Each shard
+ * writes its results while running, so a crashed shard only loses the test
+ * in progress, which is then reported as an error.
+ * <p>
+ * Usage: {@code java -cp <classpath> com.github.anba.test262.ShardedRunner}
+ * <p>
+ * The runner is configured through the "test.shards.*" entries in
+ * "test262.properties".
+ *
+ * @author André Bargull
+ *
+ */
+public final class ShardedRunner {
+    private static final String SHARD = "--shard";
+
+    private ShardedRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && SHARD.equals(args[0])) {
+            System.exit(runShard(Paths.get(args[1])));
+        }
+        System.exit(launch() ? 0 : 1);
+    }
+
+    /**
+     * Runs the tests of a single shard, called in the forked JVM
+     */
+    private static int runShard(Path results) throws IOException {
+        try (ResultLog.Writer log = ResultLog.newWriter(results)) {
+            JUnitCore core = new JUnitCore();
+            core.addListener(log);
+            Result result = core.run(Test262.class);
+            return result.wasSuccessful() ? 0 : 1;
+        }
+    }
+
+    /**
+     * A single shard and its forked JVM
+     */
+    static final class Shard {
+        final int id;
+        final List<Object[]> tests = new ArrayList<>();
+        long load = 0;
+        Path dir;
+        Process process;
+        int exitCode;
+        boolean finished;
+
+        Shard(int id) {
+            this.id = id;
+        }
+
+        Path file(String name) {
+            return dir.resolve(name);
+        }
+    }
+
+    /**
+     * Splits the test cases into shards, forks one JVM per shard and writes
+     * the merged report. Returns {@code true} if all tests were successful.
+     */
+    private static boolean launch() throws Exception {
+        Configuration configuration = BaseTest262.newConfiguration().get();
+        Configuration c = configuration.subset("test.shards");
+        long start = System.nanoTime();
+
+        int count = c.getInt("count", 0);
+        if (count <= 0) {
+            count = Runtime.getRuntime().availableProcessors();
+        }
+        Path dir = Paths.get(c.getString("dir", "target/shards"))
+                .toAbsolutePath();
+        String historyFile = configuration.getString("test.history", "");
+        RuntimeHistory history = historyFile.isEmpty() ? null
+                : RuntimeHistory.load(Paths.get(historyFile));
+
+        List<Object[]> tests = BaseTest262
+                .collectTestCases(configuration.subset(Test262.TEST_SUITE));
+        List<Shard> shards;
+        String strategy = c.getString("strategy", "round-robin");
+        switch (strategy) {
+        case "round-robin":
+            shards = roundRobin(tests, count);
+            break;
+        case "history":
+            shards = balanced(tests, count, history);
+            break;
+        default:
+            throw new IllegalArgumentException(strategy);
+        }
+
+        for (Shard shard : shards) {
+            shard.dir = dir.resolve("shard-" + shard.id);
+            Files.createDirectories(shard.dir);
+            Files.deleteIfExists(shard.file("results.log"));
+            writeOverlay(shard, configuration);
+            shard.process = fork(shard, c.getList("jvm_args", emptyList()));
+        }
+        for (Shard shard : shards) {
+            shard.exitCode = shard.process.waitFor();
+        }
+
+        List<Entry> results = new ArrayList<>();
+        for (Shard shard : shards) {
+            results.addAll(merge(shard));
+        }
+        writeReport(dir.resolve("TEST-" + Test262.class.getName() + ".xml"),
+                results, System.nanoTime() - start);
+
+        if (history != null) {
+            for (Entry entry : results) {
+                long nanos = entry.getNanos();
+                if (nanos > 0) {
+                    history.put(label(entry.getName()), nanos);
+                }
+            }
+            history.store();
+        }
+        return summary(results, shards);
+    }
+
+    /**
+     * Deterministic assignment in test order, all variants of a test file are
+     * assigned to the same shard
+     */
+    static List<Shard> roundRobin(List<Object[]> tests, int count) {
+        List<Shard> shards = newShards(count);
+        List<List<Object[]>> groups = Resources.groupByPath(tests);
+        for (int i = 0, len = groups.size(); i < len; ++i) {
+            shards.get(i % count).tests.addAll(groups.get(i));
+        }
+        return shards;
+    }
+
+    /**
+     * Assignment balanced by historical runtime (longest processing time
+     * first), tests without history are weighted with the average runtime.
+     * All variants of a test file are assigned to the same shard.
+     */
+    static List<Shard> balanced(List<Object[]> tests, int count,
+            RuntimeHistory history) {
+        if (history == null || history.isEmpty()) {
+            return roundRobin(tests, count);
+        }
+        final Map<List<Object[]>, Long> runtimes = new IdentityHashMap<>();
+        long average = history.average();
+        List<List<Object[]>> groups = Resources.groupByPath(tests);
+        for (List<Object[]> group : groups) {
+            long runtime = 0;
+            for (Object[] test : group) {
+                runtime += history.get(test[0].toString(), average);
+            }
+            runtimes.put(group, runtime);
+        }
+        Collections.sort(groups, new Comparator<List<Object[]>>() {
+            @Override
+            public int compare(List<Object[]> g1, List<Object[]> g2) {
+                return Long.compare(runtimes.get(g2), runtimes.get(g1));
+            }
+        });
+        List<Shard> shards = newShards(count);
+        for (List<Object[]> group : groups) {
+            Shard min = shards.get(0);
+            for (Shard shard : shards) {
+                if (shard.load < min.load) {
+                    min = shard;
+                }
+            }
+            min.tests.addAll(group);
+            min.load += runtimes.get(group);
+        }
+        return shards;
+    }
+
+    private static List<Shard> newShards(int count) {
+        List<Shard> shards = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            shards.add(new Shard(i + 1));
+        }
+        return shards;
+    }
+
+    /**
+     * Writes the test list and the overlay configuration for {@code shard}
+     */
+    private static void writeOverlay(Shard shard, Configuration configuration)
+            throws IOException {
+        Path testList = shard.file("tests.lst");
+        Resources.writeTestList(testList, shard.tests);
+
+        PropertiesConfiguration overlay = Resources
+                .newPropertiesConfiguration();
+        Configuration entries = configuration.subset("test.shards.overlay");
+        for (Iterator<?> keys = entries.getKeys(); keys.hasNext();) {
+            String key = keys.next().toString();
+            overlay.setProperty(key, entries.getProperty(key));
+        }
+        overlay.setProperty(Test262.TEST_SUITE + ".test_list",
+                testList.toString());
+        // the runtime history is only updated by the launcher
+        overlay.setProperty("test.history", "");
+        if (!configuration.getString("test.timings", "").isEmpty()) {
+            overlay.setProperty("test.timings", shard.file("timings")
+                    .toString());
+        }
+        if (!configuration.getString("test.results", "").isEmpty()) {
+            overlay.setProperty("test.results", shard.file("results.jsonl")
+                    .toString());
+        }
+        try (Writer writer = Files.newBufferedWriter(
+                shard.file("overlay.properties"), StandardCharsets.UTF_8)) {
+            overlay.save(writer);
+        } catch (ConfigurationException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Starts the JVM for {@code shard}
+     */
+    private static Process fork(Shard shard, List<?> jvmArgs)
+            throws IOException {
+        return fork(jvmArgs, "", shard.file("overlay.properties"),
+                shard.file("results.log"), shard.file("output.log"));
+    }
+
+    /**
+     * Starts a JVM which runs {@link Test262} with the overlay configuration
+     * {@code overlay} and writes the results to {@code results}. The
+     * optional {@code classpath} is prepended to the current class path.
+     */
+    static Process fork(List<?> jvmArgs, String classpath, Path overlay,
+            Path results, Path output) throws IOException {
+        String cp = System.getProperty("java.class.path");
+        if (!classpath.isEmpty()) {
+            cp = classpath + File.pathSeparator + cp;
+        }
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java")
+                .toString());
+        for (Object arg : jvmArgs) {
+            if (!arg.toString().isEmpty()) {
+                command.add(arg.toString());
+            }
+        }
+        command.add("-cp");
+        command.add(cp);
+        command.add("-D" + BaseTest262.OVERLAY + "=" + overlay);
+        command.add(ShardedRunner.class.getName());
+        command.add(SHARD);
+        command.add(results.toString());
+
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(output.toFile());
+        return builder.start();
+    }
+
+    /**
+     * Returns the final result for every test of {@code shard}, tests which
+     * didn't finish because the shard crashed are reported as errors
+     */
+    static List<Entry> merge(Shard shard) throws IOException {
+        String className = Test262.class.getName();
+        Map<String, Entry> results = new LinkedHashMap<>();
+        for (Object[] test : shard.tests) {
+            for (String name : testNames(test[0].toString())) {
+                results.put(name, null);
+            }
+        }
+        String crash = String.format("shard %d exited with code %d",
+                shard.id, shard.exitCode);
+        for (Entry entry : ResultLog.read(shard.file("results.log"))) {
+            switch (entry.getStatus()) {
+            case FINISHED:
+                shard.finished = true;
+                break;
+            case STARTED:
+                // replaced when the test has finished
+                results.put(entry.getName(), new Entry(Status.ERROR,
+                        entry.getClassName(), entry.getName(), 0,
+                        Error.class.getName(), crash
+                                + " while running this test", null));
+                break;
+            default:
+                results.put(entry.getName(), entry);
+            }
+        }
+        List<Entry> merged = new ArrayList<>();
+        for (Map.Entry<String, Entry> e : results.entrySet()) {
+            Entry entry = e.getValue();
+            if (entry == null) {
+                String message = shard.finished ? "not run" : "not run, "
+                        + crash;
+                entry = new Entry(Status.ERROR, className, e.getKey(), 0,
+                        Error.class.getName(), message, null);
+            }
+            merged.add(entry);
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the test names for the test case {@code label}
+     */
+    private static List<String> testNames(String label) {
+        List<String> names = new ArrayList<>();
+        for (Method method : Test262.class.getMethods()) {
+            if (method.isAnnotationPresent(Test.class)) {
+                names.add(method.getName() + "[" + label + "]");
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Inverse operation of {@link #testNames(String)}
+     */
+    private static String label(String name) {
+        int start = name.indexOf('['), end = name.lastIndexOf(']');
+        return start >= 0 && end > start ? name.substring(start + 1, end)
+                : name;
+    }
+
+    /**
+     * Writes the surefire-compatible xml report
+     */
+    private static void writeReport(Path file, List<Entry> results,
+            long nanos) throws IOException {
+        int failures = 0, errors = 0, skipped = 0;
+        for (Entry entry : results) {
+            switch (entry.getStatus()) {
+            case FAILURE:
+                failures += 1;
+                break;
+            case ERROR:
+            case TIMEOUT:
+                errors += 1;
+                break;
+            case SKIPPED:
+            case IGNORED:
+                skipped += 1;
+                break;
+            default:
+            }
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(file,
+                StandardCharsets.UTF_8)) {
+            XMLStreamWriter xml = XMLOutputFactory.newInstance()
+                    .createXMLStreamWriter(writer);
+            xml.writeStartDocument("UTF-8", "1.0");
+            xml.writeCharacters("\n");
+            xml.writeStartElement("testsuite");
+            xml.writeAttribute("name", Test262.class.getName());
+            xml.writeAttribute("time", seconds(nanos));
+            xml.writeAttribute("tests", Integer.toString(results.size()));
+            xml.writeAttribute("failures", Integer.toString(failures));
+            xml.writeAttribute("errors", Integer.toString(errors));
+            xml.writeAttribute("skipped", Integer.toString(skipped));
+            xml.writeCharacters("\n");
+            for (Entry entry : results) {
+                xml.writeCharacters("  ");
+                xml.writeStartElement("testcase");
+                xml.writeAttribute("name", text(entry.getName()));
+                xml.writeAttribute("classname", text(entry.getClassName()));
+                xml.writeAttribute("time", seconds(entry.getNanos()));
+                switch (entry.getStatus()) {
+                case FAILURE:
+                case ERROR:
+                case TIMEOUT:
+                    xml.writeStartElement(entry.getStatus() == Status.FAILURE
+                            ? "failure" : "error");
+                    if (entry.getMessage() != null) {
+                        xml.writeAttribute("message",
+                                text(entry.getMessage()));
+                    }
+                    if (entry.getType() != null) {
+                        xml.writeAttribute("type", text(entry.getType()));
+                    }
+                    if (entry.getTrace() != null) {
+                        xml.writeCharacters(text(entry.getTrace()));
+                    }
+                    xml.writeEndElement();
+                    break;
+                case SKIPPED:
+                case IGNORED:
+                    xml.writeEmptyElement("skipped");
+                    break;
+                default:
+                }
+                xml.writeEndElement();
+                xml.writeCharacters("\n");
+            }
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            xml.writeEndDocument();
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e9);
+    }
+
+    /**
+     * Replaces characters which are not allowed in xml documents
+     */
+    private static String text(String s) {
+        if (s == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0, len = s.length(); i < len; ++i) {
+            char c = s.charAt(i);
+            if (c < 0x20 && c != '\t' && c != '\n' && c != '\r') {
+                c = '?';
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Prints the summary to stdout and returns {@code true} if all tests were
+     * successful
+     */
+    private static boolean summary(List<Entry> results, List<Shard> shards) {
+        int failures = 0, errors = 0, timeouts = 0, skipped = 0;
+        for (Entry entry : results) {
+            Status status = entry.getStatus();
+            if (status == Status.FAILURE) {
+                failures += 1;
+                System.out.printf("FAILURE: %s%n", entry.getName());
+            } else if (status == Status.ERROR) {
+                errors += 1;
+                System.out.printf("ERROR: %s%n", entry.getName());
+            } else if (status == Status.TIMEOUT) {
+                timeouts += 1;
+                System.out.printf("TIMEOUT: %s%n", entry.getName());
+            } else if (status == Status.SKIPPED || status == Status.IGNORED) {
+                skipped += 1;
+            }
+        }
+        for (Shard shard : shards) {
+            if (!shard.finished) {
+                System.out.printf("shard %d exited with code %d, see %s%n",
+                        shard.id, shard.exitCode, shard.file("output.log"));
+            }
+        }
+        System.out.printf(
+                "Tests run: %d, Failures: %d, Errors: %d, Timeouts: %d, Skipped: %d%n",
+                results.size(), failures, errors, timeouts, skipped);
+        return failures == 0 && errors == 0 && timeouts == 0;
+    }
+}
@@ -11,28 +11,45 @@ import static org.hamcrest.Matchers.instanceOf;
 import static org.junit.Assume.assumeTrue;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationUtils;
 import org.hamcrest.Matcher;
 import org.junit.After;
+import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.RuleChain;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.model.Statement;
 
 import com.github.anba.test262.environment.Environment;
 import com.github.anba.test262.environment.Environments;
 import com.github.anba.test262.environment.Environments.EnvironmentProvider;
 import com.github.anba.test262.environment.GlobalObject;
+import com.github.anba.test262.environment.ScriptCache;
+import com.github.anba.test262.util.Comparisons;
 import com.github.anba.test262.util.ExceptionHandler;
+import com.github.anba.test262.util.IncrementalState;
 import com.github.anba.test262.util.LabelledParameterized;
+import com.github.anba.test262.util.LabelledParameterized.Options;
 import com.github.anba.test262.util.LazyInit;
 import com.github.anba.test262.util.Test262AssertionError;
 import com.github.anba.test262.util.Test262Info;
+import com.github.anba.test262.util.Test262TimeoutError;
+import com.github.anba.test262.util.Test262InfoIndex;
+import com.github.anba.test262.util.Timings;
 
 /**
  * The new test262 style
@@ -42,20 +59,22 @@ import com.github.anba.test262.util.Test262Info;
  */
 @RunWith(LabelledParameterized.class)
 public final class Test262 extends BaseTest262 {
-    private static final String TEST_SUITE = "test.suite.test262";
+    static final String TEST_SUITE = "test.suite.test262";
 
     private static final LazyInit<Configuration> configuration = newConfiguration();
     private static EnvironmentProvider<GlobalObject> provider;
+    // second environment to compare against, null if not enabled
+    private static EnvironmentProvider<GlobalObject> compareProvider;
     private Environment<GlobalObject> environment;
+    private boolean exited = false;
+    private Test262TimeoutError timeout;
 
-    public Test262(String sourceName, String path) {
-        super(configuration.get(), TEST_SUITE, sourceName, path);
+    public Test262(String label, String path) {
+        super(configuration.get(), TEST_SUITE, label, path);
     }
 
-    @Rule
     public ExpectedException expected = ExpectedException.none();
 
-    @Rule
     public ExceptionHandler handler = new ExceptionHandler() {
         @Override
         protected void handle(Throwable t) {
@@ -63,10 +82,49 @@ public final class Test262 extends BaseTest262 {
         }
     };
 
+    /**
+     * Reports a {@link Test262TimeoutError} as such, even if
+     * {@link #expected} already turned it into an assertion failure
+     */
+    public TestRule timeouts = new TestRule() {
+        @Override
+        public Statement apply(final Statement base, Description description) {
+            return new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    try {
+                        base.evaluate();
+                    } catch (Throwable t) {
+                        throw timeout != null ? timeout : t;
+                    }
+                    if (timeout != null) {
+                        throw timeout;
+                    }
+                }
+            };
+        }
+    };
+
+    /**
+     * The incremental rule needs to see the final test outcome, so it's
+     * applied outside of the exception handling rules
+     */
+    @Rule
+    public TestRule rules = RuleChain.outerRule(incremental)
+            .around(allocations).around(timeouts).around(expected)
+            .around(handler);
+
     @Test
     public void test() throws Throwable {
         Test262Info info = info();
-        if (info.isOnlyStrict() || info.isNoStrict()) {
+        if (isDualMode()) {
+            // only run the modes permitted by the test case information
+            assumeTrue(isStrictMode() ? !info.isNoStrict() : !info
+                    .isOnlyStrict());
+            if (isStrictMode() || info.isNoStrict()) {
+                assumeTrue(isStrictSupported());
+            }
+        } else if (info.isOnlyStrict() || info.isNoStrict()) {
             assumeTrue(isStrictSupported());
         }
 
@@ -83,29 +141,157 @@ public final class Test262 extends BaseTest262 {
             handler.match(m);
         }
 
-        execute(environment);
+        Throwable outcome = null;
+        long start = System.nanoTime();
+        try {
+            if (isParseOnly()) {
+                // a syntax error is reported by the parser, otherwise the test
+                // is executed as usual
+                checkSyntax(environment);
+                environment.global().include("sta.js");
+            }
+            execute(environment);
+        } catch (Test262TimeoutError e) {
+            timeout = e;
+            outcome = e;
+            throw e;
+        } catch (Throwable t) {
+            outcome = t;
+            throw t;
+        } finally {
+            if (compareProvider != null) {
+                compare(info, outcome, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Runs the test again in the environment from {@link #compareProvider}
+     * and records both outcomes.
+     * <p>
+     * Rhino only supports one current context per thread, so the primary
+     * environment is exited before the second run. With context reuse each
+     * environment keeps its own context per thread, which is re-entered on
+     * every switch; without it, every run creates a new context.
+     */
+    private void compare(Test262Info info, Throwable primary,
+            long primaryNanos) throws IOException {
+        environment.exit();
+        exited = true;
+        Environment<GlobalObject> env = compareProvider.environment(
+                TEST_SUITE, getSourceName(), info);
+        Throwable secondary = null;
+        long start = 0;
+        try {
+            if (isParseOnly()) {
+                start = System.nanoTime();
+                checkSyntax(env);
+                env.global().include("sta.js");
+            } else {
+                env.global().include("sta.js");
+                start = System.nanoTime();
+            }
+            evaluate(env);
+        } catch (Throwable t) {
+            secondary = t;
+        } finally {
+            env.exit();
+        }
+        long secondaryNanos = start != 0 ? System.nanoTime() - start : 0;
+        Comparisons.record(getLabel(), getPath(), primary, primaryNanos,
+                secondary, secondaryNanos);
     }
 
     @Before
     public void setUp() throws IOException {
         Environment<GlobalObject> env = provider.environment(TEST_SUITE,
                 getSourceName(), info());
-        env.global().include("sta.js");
         environment = env;
+        try {
+            if (!isParseOnly()) {
+                env.global().include("sta.js");
+            }
+        } catch (Test262TimeoutError e) {
+            timeout = e;
+            throw e;
+        }
+    }
+
+    @Override
+    protected List<Path> includes() {
+        if (environment == null) {
+            return Collections.emptyList();
+        }
+        return environment.includes();
+    }
+
+    @Override
+    protected String errorName(Throwable error) {
+        if (environment == null) {
+            return null;
+        }
+        return environment.errorName(error);
     }
 
     @After
     public void tearDown() {
-        environment.exit();
+        if (!exited) {
+            environment.exit();
+        }
     }
 
     @BeforeClass
     public static void setUpClass() {
         provider = Environments.get(configuration.get());
+        if (!configuration.get().getString("test.timings", "").isEmpty()) {
+            Timings.enable();
+        }
+        if (!configuration.get().getString("test.compare", "").isEmpty()) {
+            compareProvider = Environments.get(compareConfiguration());
+        }
+    }
+
+    /**
+     * Returns a copy of the configuration with the "test.compare.overlay"
+     * entries applied
+     */
+    private static Configuration compareConfiguration() {
+        Configuration c = configuration.get();
+        Configuration copy = ConfigurationUtils.cloneConfiguration(c);
+        Configuration entries = c.subset("test.compare.overlay");
+        for (Iterator<?> keys = entries.getKeys(); keys.hasNext();) {
+            String key = keys.next().toString();
+            copy.setProperty(key, entries.getProperty(key));
+        }
+        return copy;
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws IOException {
+        Test262InfoIndex.storeAll();
+        IncrementalState.storeAll();
+        if (Timings.isEnabled()) {
+            ScriptCache cache = ScriptCache.getInstance();
+            Timings.counter("script_cache.hits", cache.getHits());
+            Timings.counter("script_cache.misses", cache.getMisses());
+            Configuration c = configuration.get();
+            Timings.report(Paths.get(c.getString("test.timings")),
+                    c.getInt("test.timings.top", 25));
+        }
+        if (compareProvider != null) {
+            Configuration c = configuration.get();
+            Comparisons.report(Paths.get(c.getString("test.compare")),
+                    c.getInt("test.compare.top", 25), System.out);
+        }
+    }
+
+    @Options
+    public static Configuration options() {
+        return configuration.get().subset("test");
     }
 
     @Parameters
     public static List<Object[]> files() throws IOException {
-        return collectTestCases(configuration.get().subset(TEST_SUITE));
+        return streamTestCases(configuration.get().subset(TEST_SUITE));
     }
 }
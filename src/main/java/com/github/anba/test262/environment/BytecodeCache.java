@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.environment;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Evaluator;
+
+/**
+ * Content-addressed on-disk cache for the output of
+ * {@link Evaluator#compile(org.mozilla.javascript.CompilerEnvirons, org.mozilla.javascript.ast.ScriptNode, String, boolean)}.
+ * Only class-file output, i.e. {@code Object[] {className, byte[]}} as
+ * created by Codegen, is stored. Every entry is keyed by a hash over the
+ * source text, the source name and the compiler configuration.
+ *
+ * @author André Bargull
+ *
+ */
+final class BytecodeCache {
+    private static final int MAGIC = 0x74323632;
+
+    private final Path dir;
+    private final String fingerprint;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a new cache in {@code dir}, {@code configuration} describes all
+     * settings which affect the generated bytecode
+     */
+    BytecodeCache(Path dir, Object... configuration) {
+        StringBuilder sb = new StringBuilder();
+        for (Object o : configuration) {
+            sb.append(o).append('\0');
+        }
+        sb.append(rhinoVersion());
+        this.dir = dir;
+        this.fingerprint = sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BytecodeCache [dir=%s, hits=%d, misses=%d]",
+                dir, hits.get(), misses.get());
+    }
+
+    /**
+     * Returns the cache key for the script
+     */
+    String key(String sourceName, String source) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(fingerprint.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            md.update(sourceName.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            md.update(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(40);
+            for (byte b : md.digest()) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(
+                        Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Path file(String key) {
+        return dir.resolve(key.substring(0, 2)).resolve(key + ".bin");
+    }
+
+    /**
+     * Returns the cached bytecode for {@code key} or {@code null} if not
+     * present
+     */
+    Object load(String key) {
+        Path file = file(key);
+        if (Files.isRegularFile(file)) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() == MAGIC) {
+                    String className = in.readUTF();
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    hits.incrementAndGet();
+                    return new Object[] { className, bytes };
+                }
+            } catch (IOException e) {
+                // treat unreadable entries as missing
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Stores {@code bytecode} under {@code key}, unsupported bytecode formats
+     * are silently ignored
+     */
+    void store(String key, Object bytecode) {
+        if (!(bytecode instanceof Object[])) {
+            return;
+        }
+        Object[] classfile = (Object[]) bytecode;
+        if (classfile.length != 2 || !(classfile[0] instanceof String)
+                || !(classfile[1] instanceof byte[])) {
+            return;
+        }
+        Path file = file(key);
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), key, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                byte[] bytes = (byte[]) classfile[1];
+                out.writeInt(MAGIC);
+                out.writeUTF((String) classfile[0]);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the cache is best-effort only, the script is simply compiled
+            // again in the next run
+        }
+    }
+
+    /**
+     * Returns a description of the Rhino build, so that cache entries are
+     * invalidated when the Rhino library changes
+     */
+    private static String rhinoVersion() {
+        StringBuilder sb = new StringBuilder();
+        CodeSource source = Context.class.getProtectionDomain()
+                .getCodeSource();
+        if (source != null && source.getLocation() != null) {
+            try {
+                Path jar = Paths.get(source.getLocation().toURI());
+                sb.append(jar);
+                if (Files.isRegularFile(jar)) {
+                    sb.append('\0').append(Files.size(jar)).append('\0')
+                            .append(Files.getLastModifiedTime(jar).toMillis());
+                }
+            } catch (URISyntaxException | IOException
+                    | IllegalArgumentException e) {
+                // ignore, entries are then only keyed by the configuration
+            }
+        }
+        return sb.toString();
+    }
+}
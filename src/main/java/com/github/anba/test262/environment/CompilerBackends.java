@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.environment;
+
+import static com.github.anba.test262.util.Reflection.__factory__;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.configuration.Configuration;
+import org.mozilla.javascript.Evaluator;
+
+import com.github.anba.test262.util.Reflection.Factory;
+
+/**
+ * Registry of the configured compiler backends ("rhino.compiler.*"). Each
+ * {@link Evaluator} class is resolved once when the registry is created.
+ *
+ * @author André Bargull
+ *
+ */
+final class CompilerBackends {
+    /**
+     * {@link Evaluator} implementations which don't carry any state from one
+     * compilation to the next and can therefore be reused. Codegen keeps its
+     * constant pool and direct-call targets across compilations, so it
+     * always gets a fresh instance.
+     */
+    private static final Set<String> REUSABLE = new HashSet<>(
+            Arrays.asList("org.mozilla.javascript.Interpreter"));
+
+    private final Map<String, CompilerBackend> backends = new LinkedHashMap<>();
+    private final CompilerBackend defaultBackend;
+
+    CompilerBackends(Configuration configuration) {
+        Configuration c = configuration.subset("rhino.compiler");
+        for (Iterator<?> keys = c.getKeys(); keys.hasNext();) {
+            String name = keys.next().toString();
+            if (!"default".equals(name)) {
+                backends.put(name,
+                        new CompilerBackend(name, c.getString(name)));
+            }
+        }
+        defaultBackend = find(c.getString("default"));
+    }
+
+    /**
+     * Returns the backend for "rhino.compiler.default"
+     */
+    CompilerBackend getDefault() {
+        return defaultBackend;
+    }
+
+    /**
+     * Returns the backend registered under {@code name}
+     */
+    CompilerBackend get(String name) {
+        CompilerBackend backend = backends.get(name);
+        if (backend == null) {
+            throw new IllegalArgumentException(name);
+        }
+        return backend;
+    }
+
+    /**
+     * Returns all registered backends
+     */
+    Collection<CompilerBackend> all() {
+        return Collections.unmodifiableCollection(backends.values());
+    }
+
+    private CompilerBackend find(String className) {
+        for (CompilerBackend backend : backends.values()) {
+            if (backend.getClassName().equals(className)) {
+                return backend;
+            }
+        }
+        return new CompilerBackend("default", className);
+    }
+
+    /**
+     * A single compiler backend
+     */
+    static final class CompilerBackend {
+        private final String name;
+        private final String className;
+        private final Factory<Evaluator> factory;
+        private final ThreadLocal<Evaluator> evaluator;
+
+        CompilerBackend(String name, String className) {
+            this.name = name;
+            this.className = className;
+            this.factory = __factory__(className);
+            if (REUSABLE.contains(className)) {
+                this.evaluator = new ThreadLocal<Evaluator>() {
+                    @Override
+                    protected Evaluator initialValue() {
+                        return factory.newInstance();
+                    }
+                };
+            } else {
+                this.evaluator = null;
+            }
+        }
+
+        /**
+         * Returns the name of this backend, e.g. "interpreter"
+         */
+        String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the class-name of the {@link Evaluator} implementation
+         */
+        String getClassName() {
+            return className;
+        }
+
+        /**
+         * Returns an {@link Evaluator} for the current thread
+         */
+        Evaluator evaluator() {
+            if (evaluator != null) {
+                return evaluator.get();
+            }
+            return factory.newInstance();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s [%s]", name, className);
+        }
+    }
+}
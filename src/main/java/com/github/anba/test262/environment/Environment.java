@@ -7,7 +7,9 @@
 package com.github.anba.test262.environment;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.List;
 
 import com.github.anba.test262.util.EcmaErrorMatcher;
 
@@ -16,7 +18,13 @@ import com.github.anba.test262.util.EcmaErrorMatcher;
  * 
  */
 public interface Environment<GLOBAL extends GlobalObject> {
-    void eval(String sourceName, InputStream source) throws IOException;
+    void eval(String sourceName, Reader source) throws IOException;
+
+    /**
+     * Parses the script without executing it, the first syntax error is
+     * thrown
+     */
+    void checkSyntax(String sourceName, Reader source) throws IOException;
 
     GLOBAL global();
 
@@ -25,4 +33,15 @@ public interface Environment<GLOBAL extends GlobalObject> {
     Class<?>[] exceptions();
 
     EcmaErrorMatcher<? extends Throwable> matcher(String errorType);
+
+    /**
+     * Returns the ECMAScript error name of {@code error}, e.g. "TypeError", or
+     * {@code null} if {@code error} was not thrown by the script
+     */
+    String errorName(Throwable error);
+
+    /**
+     * Returns the library files which were included so far
+     */
+    List<Path> includes();
 }
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.environment;
+
+import java.util.ServiceLoader;
+import java.util.Set;
+
+import org.apache.commons.configuration.Configuration;
+
+import com.github.anba.test262.environment.Environments.EnvironmentProvider;
+
+/**
+ * Service interface for script engines, implementations are discovered
+ * through {@link ServiceLoader} and selected by their name with the
+ * "test.provider" configuration entry
+ * 
+ * @author André Bargull
+ * 
+ */
+public interface EnvironmentProviderFactory {
+    /**
+     * Optional features of an engine
+     */
+    enum Capability {
+        /** strict mode semantics are supported */
+        STRICT_MODE,
+
+        /**
+         * a single provider can be used from multiple threads, otherwise one
+         * provider is created per thread
+         */
+        THREAD_SAFE
+    }
+
+    /**
+     * Returns the provider name, e.g. "rhino"
+     */
+    String getName();
+
+    /**
+     * Returns the supported optional features
+     */
+    Set<Capability> getCapabilities();
+
+    /**
+     * Creates a new environment provider for the configuration
+     */
+    <T extends GlobalObject> EnvironmentProvider<T> newProvider(
+            Configuration configuration);
+}
@@ -11,20 +11,31 @@ import static com.github.anba.test262.util.Functional.intoCollection;
 import static java.util.Collections.emptyList;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.configuration.Configuration;
 import org.junit.Assert;
+import org.mozilla.javascript.CompilerEnvirons;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ContextFactory;
 
+import com.github.anba.test262.environment.CompilerBackends.CompilerBackend;
+import com.github.anba.test262.environment.EnvironmentProviderFactory.Capability;
+import com.github.anba.test262.util.IncrementalState;
+import com.github.anba.test262.util.LazyInit;
 import com.github.anba.test262.util.Test262AssertionError;
 import com.github.anba.test262.util.Test262Info;
 import com.github.anba.test262.util.Functional.Mapper;
@@ -52,17 +63,103 @@ public final class Environments {
     }
 
     /**
-     * Returns the default environment provider
+     * All {@link EnvironmentProviderFactory} implementations, keyed by name
      */
-    public static <T extends GlobalObject> EnvironmentProvider<T> get(
+    private static final LazyInit<Map<String, EnvironmentProviderFactory>> factories = new LazyInit<Map<String, EnvironmentProviderFactory>>() {
+        @Override
+        protected Map<String, EnvironmentProviderFactory> initialize() {
+            Map<String, EnvironmentProviderFactory> factories = new LinkedHashMap<>();
+            for (EnvironmentProviderFactory factory : ServiceLoader
+                    .load(EnvironmentProviderFactory.class)) {
+                if (!factories.containsKey(factory.getName())) {
+                    factories.put(factory.getName(), factory);
+                }
+            }
+            return Collections.unmodifiableMap(factories);
+        }
+    };
+
+    /**
+     * Returns the names of all available environment providers
+     */
+    public static Set<String> providers() {
+        return factories.get().keySet();
+    }
+
+    /**
+     * Returns the factory of the configured environment provider
+     */
+    private static EnvironmentProviderFactory factory(
             Configuration configuration) {
         String library = configuration.getString("test.provider", "rhino");
-        switch (library) {
-        case "rhino":
-            return rhino(configuration);
-        default:
+        EnvironmentProviderFactory factory = factories.get().get(library);
+        if (factory == null) {
             throw new IllegalArgumentException(library);
         }
+        return factory;
+    }
+
+    /**
+     * Returns the optional features of the configured environment provider
+     */
+    public static Set<Capability> capabilities(Configuration configuration) {
+        return factory(configuration).getCapabilities();
+    }
+
+    /**
+     * Returns the configured environment provider. Providers which are not
+     * {@link Capability#THREAD_SAFE thread-safe} are created once per thread
+     * and reused for all tests on that thread.
+     */
+    public static <T extends GlobalObject> EnvironmentProvider<T> get(
+            final Configuration configuration) {
+        final EnvironmentProviderFactory factory = factory(configuration);
+        if (factory.getCapabilities().contains(Capability.THREAD_SAFE)) {
+            return factory.newProvider(configuration);
+        }
+        final ThreadLocal<EnvironmentProvider<T>> providers = new ThreadLocal<EnvironmentProvider<T>>() {
+            @Override
+            protected EnvironmentProvider<T> initialValue() {
+                return factory.newProvider(configuration);
+            }
+        };
+        return new EnvironmentProvider<T>() {
+            @Override
+            public Environment<T> environment(String testsuite,
+                    String sourceName, Test262Info info) {
+                return providers.get().environment(testsuite, sourceName,
+                        info);
+            }
+        };
+    }
+
+    /**
+     * Returns a description of the engine library and its configuration, so
+     * cached test results can be invalidated when either one changes
+     */
+    public static String fingerprint(Configuration configuration)
+            throws IOException {
+        String library = configuration.getString("test.provider", "rhino");
+        StringBuilder sb = new StringBuilder(library);
+        for (Iterator<?> keys = configuration.getKeys(library); keys
+                .hasNext();) {
+            String key = keys.next().toString();
+            sb.append('\0').append(key).append('=')
+                    .append(configuration.getList(key));
+        }
+        CodeSource source = Context.class.getProtectionDomain()
+                .getCodeSource();
+        if (source != null && source.getLocation() != null) {
+            try {
+                Path jar = Paths.get(source.getLocation().toURI());
+                sb.append('\0').append(
+                        Files.isRegularFile(jar) ? IncrementalState
+                                .fileHash(jar) : jar.toString());
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                // ignore, only use the configuration
+            }
+        }
+        return sb.toString();
     }
 
     /**
@@ -72,8 +169,8 @@ public final class Environments {
             final Configuration configuration) {
         final int version = configuration.getInt("rhino.version",
                 Context.VERSION_DEFAULT);
-        final String compiler = configuration
-                .getString("rhino.compiler.default");
+        final CompilerBackend compiler = new CompilerBackends(configuration)
+                .getDefault();
         List<?> enabledFeatures = configuration.getList(
                 "rhino.features.enabled", emptyList());
         List<?> disabledFeatures = configuration.getList(
@@ -84,6 +181,21 @@ public final class Environments {
         final Set<Integer> disabled = intoCollection(
                 filterMap(disabledFeatures, notEmptyString, toInteger),
                 new HashSet<Integer>());
+        final long budget = configuration.getLong(
+                "rhino.limits.instructions", 0);
+        final long timeout = configuration.getLong("rhino.limits.timeout", 0);
+        final int threshold = (budget > 0 || timeout > 0) ? configuration
+                .getInt("rhino.limits.check_interval", 100000) : 0;
+        final boolean reuse = configuration.getBoolean("rhino.context.reuse",
+                true) && RhinoContext.isResettable();
+        // the shared context per thread if contexts are reused
+        final ThreadLocal<RhinoContext> sharedContexts = reuse ? new ThreadLocal<RhinoContext>()
+                : null;
+        String cacheDir = configuration.getString("rhino.bytecode_cache", "");
+        final BytecodeCache bytecodeCache = cacheDir.isEmpty() ? null
+                : new BytecodeCache(Paths.get(cacheDir),
+                        compiler.getClassName(), version, enabled, disabled,
+                        threshold > 0);
 
         /**
          * Initializes the global {@link ContextFactory} according to the
@@ -104,10 +216,32 @@ public final class Environments {
 
             @Override
             protected Context makeContext() {
-                Context context = super.makeContext();
+                RhinoContext context = new RhinoContext(this);
                 context.setLanguageVersion(version);
+                if (threshold > 0) {
+                    context.setInstructionObserverThreshold(threshold);
+                }
+                context.saveInitialState();
                 return context;
             }
+
+            @Override
+            protected void observeInstructionCount(Context cx,
+                    int instructionCount) {
+                ((RhinoContext) cx).observe(instructionCount);
+            }
+        };
+
+        /**
+         * Compiler settings per thread, all contexts from {@code factory} share
+         * the same settings
+         */
+        final ThreadLocal<CompilerEnvirons> compilerEnvs = new ThreadLocal<CompilerEnvirons>() {
+            @Override
+            protected CompilerEnvirons initialValue() {
+                return RhinoEnv.newCompilerEnvirons(Context
+                        .getCurrentContext());
+            }
         };
 
         EnvironmentProvider<RhinoGlobalObject> provider = new EnvironmentProvider<RhinoGlobalObject>() {
@@ -120,58 +254,79 @@ public final class Environments {
                 final String encoding = c.getString("encoding", "UTF-8");
                 final String libpath = c.getString("lib_path");
 
-                final Context cx = factory.enterContext();
-                final AtomicReference<RhinoGlobalObject> $global = new AtomicReference<>();
+                final RhinoContext cx = enter(factory, sharedContexts);
+                if (threshold > 0) {
+                    cx.startBudget(budget, timeout);
+                }
+                final AtomicReference<LazyInit<RhinoGlobalObject>> $global = new AtomicReference<>();
 
                 final RhinoEnv<RhinoGlobalObject> environment = new RhinoEnv<RhinoGlobalObject>() {
                     @Override
                     public RhinoGlobalObject global() {
-                        return $global.get();
+                        return $global.get().get();
                     }
 
                     @Override
-                    protected String getEvaluator() {
+                    protected CompilerBackend getCompilerBackend() {
                         return compiler;
                     }
 
                     @Override
-                    protected String getCharsetName() {
-                        return encoding;
+                    protected BytecodeCache getBytecodeCache() {
+                        return bytecodeCache;
                     }
 
                     @Override
-                    public void exit() {
-                        Context.exit();
-                    }
-                };
-
-                @SuppressWarnings({ "serial" })
-                final RhinoGlobalObject global = new RhinoGlobalObject() {
-                    {
-                        cx.initStandardObjects(this, false);
+                    protected CompilerEnvirons getCompilerEnvirons() {
+                        return compilerEnvs.get();
                     }
 
                     @Override
-                    protected boolean isStrictSupported() {
-                        return strictSupported;
+                    public void exit() {
+                        if (!reuse) {
+                            Context.exit();
+                        }
                     }
+                };
 
+                // the global object is only created on first access, tests
+                // which are only parsed don't need it
+                final LazyInit<RhinoGlobalObject> global = new LazyInit<RhinoGlobalObject>() {
                     @Override
-                    protected String getDescription() {
-                        return info.getDescription();
-                    }
+                    @SuppressWarnings({ "serial" })
+                    protected RhinoGlobalObject initialize() {
+                        return new RhinoGlobalObject() {
+                            {
+                                cx.initStandardObjects(this, false);
+                            }
 
-                    @Override
-                    protected void failure(String message) {
-                        failWith(message, sourceName);
-                    }
+                            @Override
+                            protected boolean isStrictSupported() {
+                                return strictSupported;
+                            }
 
-                    @Override
-                    protected void include(Path path) throws IOException {
-                        // resolve the input file against the library path
-                        Path file = Paths.get(libpath).resolve(path);
-                        InputStream source = Files.newInputStream(file);
-                        environment.eval(file.getFileName().toString(), source);
+                            @Override
+                            protected String getDescription() {
+                                return info.getDescription();
+                            }
+
+                            @Override
+                            protected void failure(String message) {
+                                failWith(message, sourceName);
+                            }
+
+                            @Override
+                            protected void include(Path path)
+                                    throws IOException {
+                                // resolve the input file against the library
+                                // path
+                                Path file = Paths.get(libpath).resolve(path);
+                                environment.include(new ScriptCache.Key(file,
+                                        encoding, compiler.getClassName(),
+                                        version, enabled, disabled,
+                                        threshold > 0));
+                            }
+                        };
                     }
                 };
 
@@ -187,6 +342,39 @@ public final class Environments {
         return p;
     }
 
+    /**
+     * Enters a context from {@code factory} on the current thread. A thread
+     * has only one current context, so a context from a different factory
+     * (e.g. the second environment in comparison mode) is exited first. If
+     * {@code sharedContexts} is not {@code null}, the context is created once
+     * per thread and factory and re-entered after a switch, its per-test state
+     * is reset each time. Otherwise a new context is created unless one from
+     * {@code factory} is already entered.
+     */
+    private static RhinoContext enter(ContextFactory factory,
+            ThreadLocal<RhinoContext> sharedContexts) {
+        Context cx = Context.getCurrentContext();
+        while (cx != null && cx.getFactory() != factory) {
+            Context.exit();
+            cx = Context.getCurrentContext();
+        }
+        if (sharedContexts == null) {
+            return (RhinoContext) factory.enterContext();
+        }
+        RhinoContext shared = (RhinoContext) cx;
+        if (shared == null) {
+            shared = sharedContexts.get();
+            if (shared == null) {
+                shared = (RhinoContext) factory.enterContext();
+                sharedContexts.set(shared);
+                return shared;
+            }
+            factory.enterContext(shared);
+        }
+        shared.reset();
+        return shared;
+    }
+
     private static final Predicate<Object> notEmptyString = new Predicate<Object>() {
         @Override
         public boolean eval(Object value) {
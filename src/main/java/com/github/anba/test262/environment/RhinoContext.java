@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.environment;
+
+import java.lang.reflect.Field;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.ErrorReporter;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.WrapFactory;
+import org.mozilla.javascript.regexp.RegExpImpl;
+
+import com.github.anba.test262.util.Test262TimeoutError;
+
+/**
+ * {@link Context} with an instruction budget and a wall-clock deadline for
+ * the current test. Both limits are only checked when Rhino reports the
+ * executed instructions, see
+ * {@link Context#setInstructionObserverThreshold(int)}.
+ * 
+ * @author André Bargull
+ * 
+ */
+final class RhinoContext extends Context {
+    /**
+     * {@code Context#threadLocalMap}, Rhino offers no way to remove all thread
+     * locals, {@code null} if not accessible
+     */
+    private static final Field THREAD_LOCALS = threadLocals();
+
+    private long budget;
+    private long timeout;
+    private long instructions;
+    private long deadline;
+
+    // initial settings, restored by reset()
+    private int languageVersion;
+    private int optimizationLevel;
+    private int observerThreshold;
+    private boolean generatingDebug;
+    private boolean generatingSource;
+    private ErrorReporter errorReporter;
+    private Locale locale;
+    private WrapFactory wrapFactory;
+
+    RhinoContext(ContextFactory factory) {
+        super(factory);
+    }
+
+    private static Field threadLocals() {
+        try {
+            Field field = Context.class.getDeclaredField("threadLocalMap");
+            field.setAccessible(true);
+            return field;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns {@code true} if {@link #reset()} restores the complete per-test
+     * state, i.e. the context can be shared between tests
+     */
+    static boolean isResettable() {
+        return THREAD_LOCALS != null;
+    }
+
+    /**
+     * Records the current settings as the initial state for {@link #reset()}
+     */
+    void saveInitialState() {
+        languageVersion = getLanguageVersion();
+        optimizationLevel = getOptimizationLevel();
+        observerThreshold = getInstructionObserverThreshold();
+        generatingDebug = isGeneratingDebug();
+        generatingSource = isGeneratingSource();
+        errorReporter = getErrorReporter();
+        locale = getLocale();
+        wrapFactory = getWrapFactory();
+    }
+
+    /**
+     * Restores the state of a new context before the next test: the initial
+     * settings, new RegExp statics and no thread locals
+     */
+    void reset() {
+        setLanguageVersion(languageVersion);
+        setOptimizationLevel(optimizationLevel);
+        setInstructionObserverThreshold(observerThreshold);
+        setGeneratingDebug(generatingDebug);
+        setGeneratingSource(generatingSource);
+        setErrorReporter(errorReporter);
+        setLocale(locale);
+        setWrapFactory(wrapFactory);
+        setDebugger(null, null);
+        ScriptRuntime.setRegExpProxy(this, new RegExpImpl());
+        try {
+            THREAD_LOCALS.set(this, null);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Starts a new budget of {@code budget} instructions and
+     * {@code timeout} milliseconds, a value of {@code 0} disables the
+     * respective limit
+     */
+    void startBudget(long budget, long timeout) {
+        this.budget = budget;
+        this.timeout = timeout;
+        this.instructions = 0;
+        this.deadline = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    /**
+     * Adds {@code count} executed instructions and aborts the script with
+     * {@link Test262TimeoutError} if a limit was exceeded
+     */
+    void observe(int count) {
+        instructions += count;
+        if (budget > 0 && instructions > budget) {
+            throw new Test262TimeoutError(String.format(
+                    "instruction budget exceeded (%d instructions)", budget));
+        }
+        if (timeout > 0 && System.nanoTime() - deadline > 0) {
+            throw new Test262TimeoutError(String.format(
+                    "timeout exceeded (%d ms)", timeout));
+        }
+    }
+}
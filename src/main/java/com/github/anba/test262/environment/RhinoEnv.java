@@ -7,18 +7,19 @@
 package com.github.anba.test262.environment;
 
 import static com.github.anba.test262.util.Functional.of;
-import static com.github.anba.test262.util.Reflection.__new__;
-import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.regex.Pattern;
 
-import org.apache.commons.io.ByteOrderMark;
-import org.apache.commons.io.input.BOMInputStream;
+import org.apache.commons.io.IOUtils;
 import org.mozilla.javascript.CompilerEnvirons;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.EcmaError;
@@ -38,6 +39,9 @@ import org.mozilla.javascript.ast.ScriptNode;
 import com.github.anba.test262.util.CollectingErrorReporter;
 import com.github.anba.test262.util.EcmaErrorMatcher;
 import com.github.anba.test262.util.Functional.Tuple2;
+import com.github.anba.test262.util.SourceFile;
+import com.github.anba.test262.util.Timings;
+import com.github.anba.test262.util.Timings.Phase;
 
 /**
  * 
@@ -50,21 +54,44 @@ abstract class RhinoEnv<GLOBAL extends Scriptable & GlobalObject> implements
         return Context.getCurrentContext();
     }
 
-    private final CompilerEnvirons compilerEnv;
-    {
-        compilerEnv = new CompilerEnvirons();
-        compilerEnv.initFromContext(context());
+    private CompilerEnvirons compilerEnv;
+
+    /**
+     * Returns the compiler settings, by default a new instance is created for
+     * each environment from the current context
+     */
+    protected CompilerEnvirons getCompilerEnvirons() {
+        if (compilerEnv == null) {
+            compilerEnv = newCompilerEnvirons(context());
+        }
+        return compilerEnv;
+    }
+
+    /**
+     * Creates new compiler settings from {@code cx}
+     */
+    static CompilerEnvirons newCompilerEnvirons(Context cx) {
+        CompilerEnvirons compilerEnv = new CompilerEnvirons();
+        compilerEnv.initFromContext(cx);
         // compilerEnv.setIdeMode(true);
         // compilerEnv.setRecordingComments(true);
         // compilerEnv.setRecoverFromErrors(true);
+        return compilerEnv;
     }
 
+    private final List<Path> includes = new ArrayList<>();
+
     @Override
     public abstract GLOBAL global();
 
-    protected abstract String getEvaluator();
+    protected abstract CompilerBackends.CompilerBackend getCompilerBackend();
 
-    protected abstract String getCharsetName();
+    /**
+     * Returns the on-disk bytecode cache or {@code null} if disabled
+     */
+    protected BytecodeCache getBytecodeCache() {
+        return null;
+    }
 
     @Override
     public Class<?>[] exceptions() {
@@ -74,56 +101,261 @@ abstract class RhinoEnv<GLOBAL extends Scriptable & GlobalObject> implements
 
     @Override
     public EcmaErrorMatcher<RhinoException> matcher(String errorType) {
-        return new EcmaErrorMatcher<RhinoException>() {
-            @Override
-            public boolean matches(RhinoException error, String errorType) {
-                // errorType is now a regular expression
-                Pattern p = Pattern
-                        .compile(errorType, Pattern.CASE_INSENSITIVE);
-                String name;
-                if (error instanceof EcmaError) {
-                    name = ((EcmaError) error).getName();
-                } else if (error instanceof JavaScriptException) {
-                    Object value = ((JavaScriptException) error).getValue();
-                    if (value != null
-                            && value.getClass()
-                                    .getName()
-                                    .equals("org.mozilla.javascript.NativeError")) {
-                        Object message = ((ScriptableObject) value)
-                                .get("message");
-                        name = ScriptRuntime.toString(message);
-                    } else {
-                        name = error.details();
+        return MATCHER;
+    }
+
+    private static final EcmaErrorMatcher<RhinoException> MATCHER = new EcmaErrorMatcher<RhinoException>() {
+        @Override
+        public boolean matches(RhinoException error, String errorType) {
+            CharSequence name = matchedName(error);
+            // errorType is now a regular expression, plain identifiers are
+            // matched literally without going through java.util.regex
+            if (isIdentifier(errorType)) {
+                return containsIgnoreCase(name, errorType);
+            }
+            return pattern(errorType).matcher(name).find();
+        }
+
+        @Override
+        public Class<? extends RhinoException> exception() {
+            return RhinoException.class;
+        }
+    };
+
+    /**
+     * {@code org.mozilla.javascript.NativeError} is not accessible, the class
+     * is resolved once and compared by identity
+     */
+    private static final Class<?> NATIVE_ERROR = nativeErrorClass();
+
+    private static Class<?> nativeErrorClass() {
+        try {
+            return Class.forName("org.mozilla.javascript.NativeError", false,
+                    ScriptableObject.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Override
+    public String errorName(Throwable error) {
+        if (error instanceof EcmaError) {
+            return ((EcmaError) error).getName();
+        } else if (error instanceof EvaluatorException) {
+            return "SyntaxError";
+        } else if (error instanceof JavaScriptException) {
+            Object value = ((JavaScriptException) error).getValue();
+            if (value instanceof Scriptable) {
+                try {
+                    Object name = ScriptableObject.getProperty(
+                            (Scriptable) value, "name");
+                    if (name instanceof CharSequence) {
+                        return name.toString();
                     }
-                } else if (error instanceof EvaluatorException) {
-                    name = "SyntaxError";
-                } else {
-                    name = "";
+                } catch (RuntimeException e) {
+                    // getter failed, the name is unknown
                 }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the error name which is matched against the expected error type.
+     * Strings are passed through as is, a new string is only created when a
+     * non-string value needs to be converted.
+     */
+    private static CharSequence matchedName(RhinoException error) {
+        if (error instanceof EcmaError) {
+            return ((EcmaError) error).getName();
+        } else if (error instanceof JavaScriptException) {
+            Object value = ((JavaScriptException) error).getValue();
+            if (value != null && value.getClass() == NATIVE_ERROR) {
+                value = ((ScriptableObject) value).get("message");
+            }
+            return toCharSequence((JavaScriptException) error, value);
+        } else if (error instanceof EvaluatorException) {
+            return "SyntaxError";
+        }
+        return "";
+    }
+
+    /**
+     * Same conversion as {@link JavaScriptException#details()}, but without
+     * flattening strings
+     */
+    private static CharSequence toCharSequence(JavaScriptException error,
+            Object value) {
+        if (value == null) {
+            return "null";
+        }
+        try {
+            return ScriptRuntime.toCharSequence(value);
+        } catch (RuntimeException e) {
+            // toString() threw, use the default object description
+            return error.details();
+        }
+    }
+
+    private static final int MAX_PATTERNS = 256;
+
+    /**
+     * Compiled error type patterns, the least recently used pattern is evicted
+     * when the cache is full
+     */
+    @SuppressWarnings("serial")
+    private static final Map<String, Pattern> patterns = new LinkedHashMap<String, Pattern>(
+            16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Pattern> e) {
+            return size() > MAX_PATTERNS;
+        }
+    };
+
+    /**
+     * Returns the compiled, case-insensitive pattern for {@code errorType}
+     */
+    private static Pattern pattern(String errorType) {
+        synchronized (patterns) {
+            Pattern p = patterns.get(errorType);
+            if (p == null) {
+                p = Pattern.compile(errorType, Pattern.CASE_INSENSITIVE);
+                patterns.put(errorType, p);
+            }
+            return p;
+        }
+    }
 
-                return p.matcher(name).find();
-                // return errorType.equals(name);
+    /**
+     * Returns {@code true} if {@code s} is a non-empty sequence of ASCII
+     * letters, digits or '_', i.e. it does not contain any regular expression
+     * meta characters ('$' is an anchor, not a literal character)
+     */
+    private static boolean isIdentifier(String s) {
+        if (s.isEmpty()) {
+            return false;
+        }
+        for (int i = 0, len = s.length(); i < len; ++i) {
+            char c = s.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9') || c == '_')) {
+                return false;
             }
+        }
+        return true;
+    }
 
-            @Override
-            public Class<? extends RhinoException> exception() {
-                return RhinoException.class;
+    /**
+     * Case-insensitive (ASCII only, same as {@link Pattern#CASE_INSENSITIVE})
+     * substring search
+     */
+    private static boolean containsIgnoreCase(CharSequence s, String sub) {
+        for (int i = 0, last = s.length() - sub.length(); i <= last; ++i) {
+            int j = 0, len = sub.length();
+            while (j < len && lower(s.charAt(i + j)) == lower(sub.charAt(j))) {
+                ++j;
+            }
+            if (j == len) {
+                return true;
             }
-        };
+        }
+        return false;
+    }
+
+    private static char lower(char c) {
+        return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    @Override
+    public List<Path> includes() {
+        return includes;
     }
 
     /**
      * Parses, compiles and executes the javascript file
      */
     @Override
-    public void eval(String sourceName, InputStream source) throws IOException {
-        Reader reader = newReader(source, getCharsetName());
+    public void eval(String sourceName, Reader source) throws IOException {
+        BytecodeCache cache = getBytecodeCache();
+        if (cache == null) {
+            Tuple2<AstRoot, List<EvaluatorException>> parsed = parse(
+                    sourceName, source);
+            if (!parsed._2().isEmpty()) {
+                throw parsed._2().get(0);
+            }
+            execute(parsed._1());
+        } else {
+            execute(compile(cache, sourceName, IOUtils.toString(source)));
+        }
+    }
+
+    /**
+     * Parses the javascript file, neither the global object nor the compiler
+     * is needed
+     */
+    @Override
+    public void checkSyntax(String sourceName, Reader source)
+            throws IOException {
         Tuple2<AstRoot, List<EvaluatorException>> parsed = parse(sourceName,
-                reader);
+                source);
         if (!parsed._2().isEmpty()) {
             throw parsed._2().get(0);
         }
-        execute(parsed._1());
+    }
+
+    /**
+     * Returns the script from the bytecode cache, parse, IR transformation
+     * and compilation are only performed on a cache miss
+     */
+    private Script compile(BytecodeCache cache, String sourceName,
+            String source) throws IOException {
+        String key = cache.key(sourceName, source);
+        Evaluator compiler = getCompilerBackend().evaluator();
+        Object bytecode = cache.load(key);
+        if (bytecode == null) {
+            Tuple2<AstRoot, List<EvaluatorException>> parsed = parse(
+                    sourceName, new StringReader(source));
+            if (!parsed._2().isEmpty()) {
+                throw parsed._2().get(0);
+            }
+            bytecode = compile(compiler, parsed._1());
+            cache.store(key, bytecode);
+        }
+        return createScript(compiler, bytecode);
+    }
+
+    /**
+     * Executes the library file, the compiled script is shared across all
+     * environments through the {@link ScriptCache}
+     */
+    protected final void include(final ScriptCache.Key key) throws IOException {
+        includes.add(key.getFile());
+        Timings.enter(Phase.INCLUDE);
+        try {
+            includeScript(key);
+        } finally {
+            Timings.exit();
+        }
+    }
+
+    private void includeScript(final ScriptCache.Key key) throws IOException {
+        Script script = ScriptCache.getInstance().get(key,
+                new Callable<Script>() {
+                    @Override
+                    public Script call() throws IOException {
+                        String sourceName = key.getFile().getFileName()
+                                .toString();
+                        SourceFile source = SourceFile.read(key.getFile(),
+                                key.getCharsetName());
+                        Tuple2<AstRoot, List<EvaluatorException>> parsed = parse(
+                                sourceName, source.newReader());
+                        if (!parsed._2().isEmpty()) {
+                            throw parsed._2().get(0);
+                        }
+                        return compile(parsed._1());
+                    }
+                });
+        script.exec(context(), global());
     }
 
     /**
@@ -131,18 +363,31 @@ abstract class RhinoEnv<GLOBAL extends Scriptable & GlobalObject> implements
      */
     protected final Tuple2<AstRoot, List<EvaluatorException>> parse(
             String sourceName, Reader source) throws IOException {
-        CollectingErrorReporter errorCollector = new CollectingErrorReporter();
-        Parser p = new Parser(compilerEnv, errorCollector);
-        AstRoot ast = p.parse(source, sourceName, 1);
-        return of(ast, errorCollector.getErrors());
+        Timings.enter(Phase.PARSE);
+        try {
+            CollectingErrorReporter errorCollector = new CollectingErrorReporter();
+            Parser p = new Parser(getCompilerEnvirons(), errorCollector);
+            AstRoot ast = p.parse(source, sourceName, 1);
+            return of(ast, errorCollector.getErrors());
+        } finally {
+            Timings.exit();
+        }
     }
 
     /**
      * Executes the parsed AST with the current settings
      */
     protected final Object execute(AstRoot ast) {
-        Script script = compile(ast);
-        return script.exec(context(), global());
+        return execute(compile(ast));
+    }
+
+    private Object execute(Script script) {
+        Timings.enter(Phase.EXECUTE);
+        try {
+            return script.exec(context(), global());
+        } finally {
+            Timings.exit();
+        }
     }
 
     /**
@@ -150,25 +395,34 @@ abstract class RhinoEnv<GLOBAL extends Scriptable & GlobalObject> implements
      * {@link Script}
      */
     protected final Script compile(AstRoot ast) {
-        IRFactory irf = new IRFactory(compilerEnv);
-        ScriptNode tree = irf.transformTree(ast);
-        Evaluator compiler = __new__(getEvaluator());
-        Object bytecode = compiler.compile(compilerEnv, tree,
-                tree.getEncodedSource(), false);
-        Script script = compiler.createScriptObject(bytecode, null);
-        return script;
+        Evaluator compiler = getCompilerBackend().evaluator();
+        return createScript(compiler, compile(compiler, ast));
     }
 
-    /**
-     * Returns a new {@link Reader} for the {@code stream} parameter
-     */
-    private static Reader newReader(InputStream stream, String defaultCharset)
-            throws IOException {
-        BOMInputStream bomstream = new BOMInputStream(stream,
-                ByteOrderMark.UTF_8, ByteOrderMark.UTF_16LE,
-                ByteOrderMark.UTF_16BE);
-        String charset = defaultIfNull(bomstream.getBOMCharsetName(),
-                defaultCharset);
-        return new InputStreamReader(bomstream, charset);
+    private Object compile(Evaluator compiler, AstRoot ast) {
+        ScriptNode tree;
+        Timings.enter(Phase.TRANSFORM);
+        try {
+            IRFactory irf = new IRFactory(getCompilerEnvirons());
+            tree = irf.transformTree(ast);
+        } finally {
+            Timings.exit();
+        }
+        Timings.enter(Phase.COMPILE);
+        try {
+            return compiler.compile(getCompilerEnvirons(), tree,
+                    tree.getEncodedSource(), false);
+        } finally {
+            Timings.exit();
+        }
+    }
+
+    private Script createScript(Evaluator compiler, Object bytecode) {
+        Timings.enter(Phase.COMPILE);
+        try {
+            return compiler.createScriptObject(bytecode, null);
+        } finally {
+            Timings.exit();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.environment;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.apache.commons.configuration.Configuration;
+
+import com.github.anba.test262.environment.Environments.EnvironmentProvider;
+
+/**
+ * {@link EnvironmentProviderFactory} for Rhino
+ * 
+ * @author André Bargull
+ * 
+ */
+public final class RhinoProviderFactory implements EnvironmentProviderFactory {
+    @Override
+    public String getName() {
+        return "rhino";
+    }
+
+    @Override
+    public Set<Capability> getCapabilities() {
+        // contexts and compiler settings are kept per thread
+        return EnumSet.of(Capability.STRICT_MODE, Capability.THREAD_SAFE);
+    }
+
+    @Override
+    public <T extends GlobalObject> EnvironmentProvider<T> newProvider(
+            Configuration configuration) {
+        return Environments.rhino(configuration);
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.environment;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.javascript.Script;
+
+/**
+ * Thread-safe cache for compiled library scripts (e.g. "sta.js" and files
+ * loaded through {@code $INCLUDE}), so each library file is only compiled
+ * once per JVM
+ *
+ * @author André Bargull
+ *
+ */
+public final class ScriptCache {
+    private static final ScriptCache INSTANCE = new ScriptCache();
+
+    private final ConcurrentMap<Key, FutureTask<Script>> cache = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private ScriptCache() {
+    }
+
+    /**
+     * Returns the shared script cache
+     */
+    public static ScriptCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ScriptCache [size=%d, hits=%d, misses=%d]",
+                cache.size(), getHits(), getMisses());
+    }
+
+    /**
+     * Returns the cached script for {@code key}, {@code compiler} is only
+     * invoked if no script is present for {@code key}. Concurrent requests
+     * for the same key wait until the first compilation has finished.
+     */
+    Script get(Key key, Callable<Script> compiler) throws IOException {
+        FutureTask<Script> task = cache.get(key);
+        if (task == null) {
+            FutureTask<Script> newTask = new FutureTask<>(compiler);
+            task = cache.putIfAbsent(key, newTask);
+            if (task == null) {
+                misses.incrementAndGet();
+                task = newTask;
+                task.run();
+            } else {
+                hits.incrementAndGet();
+            }
+        } else {
+            hits.incrementAndGet();
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            // don't keep failed compilations in the cache
+            cache.remove(key, task);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Cache key for compiled library scripts
+     */
+    static final class Key {
+        private final Path file;
+        private final String charsetName;
+        private final String compiler;
+        private final int version;
+        private final Set<Integer> enabledFeatures;
+        private final Set<Integer> disabledFeatures;
+        // scripts compiled without observer counts ignore instruction limits
+        private final boolean observerCount;
+
+        Key(Path file, String charsetName, String compiler, int version,
+                Set<Integer> enabledFeatures, Set<Integer> disabledFeatures,
+                boolean observerCount) {
+            this.file = file.toAbsolutePath().normalize();
+            this.charsetName = charsetName;
+            this.compiler = compiler;
+            this.version = version;
+            this.enabledFeatures = enabledFeatures;
+            this.disabledFeatures = disabledFeatures;
+            this.observerCount = observerCount;
+        }
+
+        /**
+         * Returns the library file
+         */
+        Path getFile() {
+            return file;
+        }
+
+        /**
+         * Returns the default charset for the library file
+         */
+        String getCharsetName() {
+            return charsetName;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(file, charsetName, compiler, version,
+                    enabledFeatures, disabledFeatures, observerCount);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || obj.getClass() != Key.class) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return version == other.version
+                    && observerCount == other.observerCount
+                    && file.equals(other.file)
+                    && Objects.equals(charsetName, other.charsetName)
+                    && Objects.equals(compiler, other.compiler)
+                    && enabledFeatures.equals(other.enabledFeatures)
+                    && disabledFeatures.equals(other.disabledFeatures);
+        }
+    }
+}
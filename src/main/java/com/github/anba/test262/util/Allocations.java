@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * Access to the per-thread allocation counter of the JVM, only available on
+ * HotSpot based JVMs. The {@code com.sun.management} extension is resolved
+ * reflectively, on other JVMs allocations are simply not supported.
+ * 
+ * @author André Bargull
+ * 
+ */
+public final class Allocations {
+    private Allocations() {
+    }
+
+    private static final ThreadMXBean threadBean = ManagementFactory
+            .getThreadMXBean();
+    private static final Method getThreadAllocatedBytes = allocatedBytesMethod();
+
+    private static Method allocatedBytesMethod() {
+        try {
+            Class<?> c = Class.forName("com.sun.management.ThreadMXBean");
+            if (!c.isInstance(threadBean)) {
+                return null;
+            }
+            if (!(Boolean) c.getMethod("isThreadAllocatedMemorySupported")
+                    .invoke(threadBean)) {
+                return null;
+            }
+            if (!(Boolean) c.getMethod("isThreadAllocatedMemoryEnabled")
+                    .invoke(threadBean)) {
+                c.getMethod("setThreadAllocatedMemoryEnabled", boolean.class)
+                        .invoke(threadBean, true);
+            }
+            return c.getMethod("getThreadAllocatedBytes", long.class);
+        } catch (ReflectiveOperationException | LinkageError
+                | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns {@code true} if allocations can be measured
+     */
+    public static boolean isSupported() {
+        return getThreadAllocatedBytes != null;
+    }
+
+    /**
+     * Returns the total number of bytes allocated by the current thread or
+     * {@code 0} if not supported
+     */
+    public static long allocatedBytes() {
+        if (getThreadAllocatedBytes == null) {
+            return 0;
+        }
+        try {
+            return (Long) getThreadAllocatedBytes.invoke(threadBean, Thread
+                    .currentThread().getId());
+        } catch (ReflectiveOperationException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects the outcome and the execution time of each test in two different
+ * environments, e.g. Rhino's interpreter and Rhino's class compiler, and
+ * reports outcome differences and timing ratios.
+ * <p>
+ * The outcome is either "normal" or the exception class-name and message.
+ *
+ * @author André Bargull
+ *
+ */
+public final class Comparisons {
+    private Comparisons() {
+    }
+
+    private static final Queue<Record> records = new ConcurrentLinkedQueue<>();
+
+    private static final class Record {
+        final String test;
+        final String path;
+        final String primary;
+        final String secondary;
+        final long primaryNanos;
+        final long secondaryNanos;
+
+        Record(String test, String path, String primary, String secondary,
+                long primaryNanos, long secondaryNanos) {
+            this.test = test;
+            this.path = path;
+            this.primary = primary;
+            this.secondary = secondary;
+            this.primaryNanos = primaryNanos;
+            this.secondaryNanos = secondaryNanos;
+        }
+
+        boolean diverged() {
+            return !primary.equals(secondary);
+        }
+
+        double ratio() {
+            return primaryNanos > 0 ? (double) secondaryNanos / primaryNanos
+                    : 1;
+        }
+    }
+
+    /**
+     * Records the outcomes of a single test, {@code null} stands for normal
+     * completion
+     */
+    public static void record(String test, String path, Throwable primary,
+            long primaryNanos, Throwable secondary, long secondaryNanos) {
+        records.add(new Record(test, path, outcome(primary),
+                outcome(secondary), primaryNanos, secondaryNanos));
+    }
+
+    private static String outcome(Throwable t) {
+        if (t == null) {
+            return "normal";
+        }
+        String message = t.getMessage();
+        if (message != null) {
+            int nl = message.indexOf('\n');
+            if (nl >= 0) {
+                message = message.substring(0, nl);
+            }
+        }
+        return t.getClass().getName() + ": " + message;
+    }
+
+    /**
+     * Writes all records to "comparison.csv" in {@code dir} and prints the
+     * differing outcomes and the {@code top} largest timing ratios
+     */
+    public static void report(Path dir, int top, PrintStream out)
+            throws IOException {
+        List<Record> all = new ArrayList<>(records);
+        Collections.sort(all, new Comparator<Record>() {
+            @Override
+            public int compare(Record r1, Record r2) {
+                return Double.compare(r2.ratio(), r1.ratio());
+            }
+        });
+        Files.createDirectories(dir);
+        try (BufferedWriter writer = Files.newBufferedWriter(
+                dir.resolve("comparison.csv"), StandardCharsets.UTF_8)) {
+            writer.write("test,path,primary,secondary,primary_nanos,secondary_nanos,ratio");
+            writer.newLine();
+            for (Record r : all) {
+                writer.write(String.format(Locale.ROOT,
+                        "%s,%s,%s,%s,%d,%d,%.3f", csv(r.test), csv(r.path),
+                        csv(r.primary), csv(r.secondary), r.primaryNanos,
+                        r.secondaryNanos, r.ratio()));
+                writer.newLine();
+            }
+        }
+
+        int diverged = 0;
+        double logSum = 0;
+        int logCount = 0;
+        for (Record r : all) {
+            if (r.diverged()) {
+                diverged += 1;
+                out.printf("DIVERGED: %s: %s <> %s%n", r.test, r.primary,
+                        r.secondary);
+            }
+            if (r.primaryNanos > 0 && r.secondaryNanos > 0) {
+                logSum += Math.log(r.ratio());
+                logCount += 1;
+            }
+        }
+        for (Record r : all.subList(0, Math.min(top, all.size()))) {
+            out.printf(Locale.ROOT, "RATIO: %s: %.2f (%d ns <> %d ns)%n",
+                    r.test, r.ratio(), r.primaryNanos, r.secondaryNanos);
+        }
+        out.printf(Locale.ROOT,
+                "Compared: %d, Diverged: %d, Ratio (geometric mean): %.3f%n",
+                all.size(), diverged,
+                logCount > 0 ? Math.exp(logSum / logCount) : 1.0);
+    }
+
+    private static String csv(String s) {
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0) {
+            return s;
+        }
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,346 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Packed source corpus: the decoded content of all test and harness files in
+ * a single file, followed by an offset index and the parsed
+ * {@link Test262Info} of each test. The corpus is memory-mapped and each
+ * source file is handed out as a {@link CharBuffer} view into the mapping,
+ * so neither discovery nor reading a test touches the file system.
+ * <p>
+ * Layout: magic, version, index offset, the file contents as UTF-16BE text,
+ * and the index. The index records the size and modification time of each
+ * original file, a packed file is only used while both are unchanged (checked
+ * once per file and JVM), otherwise the file is read from disk again. Test
+ * files which were added after packing are not discovered, the corpus needs
+ * to be packed again when the test suite changes.
+ * <p>
+ * {@link SourceFile#read(Path, String)} consults all opened corpora before it
+ * falls back to the file system.
+ *
+ * @author André Bargull
+ *
+ */
+public final class Corpus {
+    private static final int MAGIC = 0x54323632; // "T262"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+
+    private static final int TEST = 1 << 0;
+    private static final int ONLY_STRICT = 1 << 1;
+    private static final int NO_STRICT = 1 << 2;
+    private static final int NEGATIVE = 1 << 3;
+
+    private static final ConcurrentMap<Path, Corpus> opened = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final CharBuffer text;
+    private final Map<String, Entry> entries;
+    private final List<Path> tests;
+    private final AtomicBoolean warned = new AtomicBoolean();
+
+    private static final class Entry {
+        final String charsetName;
+        final int offset;
+        final int length;
+        final long size;
+        final long modified;
+        final Test262Info info;
+        // null until the original file was checked
+        volatile Boolean current = null;
+
+        Entry(String charsetName, int offset, int length, long size,
+                long modified, Test262Info info) {
+            this.charsetName = charsetName;
+            this.offset = offset;
+            this.length = length;
+            this.size = size;
+            this.modified = modified;
+            this.info = info;
+        }
+    }
+
+    private Corpus(Path file, CharBuffer text, Map<String, Entry> entries,
+            List<Path> tests) {
+        this.file = file;
+        this.text = text;
+        this.entries = entries;
+        this.tests = tests;
+    }
+
+    /**
+     * Returns the paths of all test files in the order they were packed
+     */
+    public List<Path> tests() {
+        return tests;
+    }
+
+    /**
+     * Maps the corpus file into memory, each file is only mapped once
+     */
+    public static Corpus open(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        Corpus corpus = opened.get(key);
+        if (corpus == null) {
+            synchronized (opened) {
+                corpus = opened.get(key);
+                if (corpus == null) {
+                    corpus = map(key);
+                    opened.put(key, corpus);
+                }
+            }
+        }
+        return corpus;
+    }
+
+    /**
+     * Returns the source file from any opened corpus or {@code null} if not
+     * packed or changed since packing
+     */
+    static SourceFile lookup(Path path) {
+        if (opened.isEmpty()) {
+            return null;
+        }
+        String key = key(path);
+        for (Corpus corpus : opened.values()) {
+            Entry entry = corpus.entries.get(key);
+            if (entry != null) {
+                if (!corpus.isCurrent(path, entry)) {
+                    return null;
+                }
+                CharBuffer view = corpus.text.duplicate();
+                view.limit(entry.offset + entry.length).position(entry.offset);
+                return new SourceFile(path, entry.charsetName, view.slice());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the test case information from any opened corpus or
+     * {@code null} if not packed or changed since packing
+     */
+    public static Test262Info lookupInfo(Path path) {
+        if (opened.isEmpty()) {
+            return null;
+        }
+        String key = key(path);
+        for (Corpus corpus : opened.values()) {
+            Entry entry = corpus.entries.get(key);
+            if (entry != null && entry.info != null) {
+                return corpus.isCurrent(path, entry) ? entry.info : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns {@code true} if the size and modification time of the original
+     * file are unchanged since packing
+     */
+    private boolean isCurrent(Path path, Entry entry) {
+        Boolean current = entry.current;
+        if (current == null) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(path,
+                        BasicFileAttributes.class);
+                current = attrs.size() == entry.size
+                        && attrs.lastModifiedTime().toMillis() == entry.modified;
+            } catch (IOException e) {
+                current = false;
+            }
+            entry.current = current;
+            if (!current && warned.compareAndSet(false, true)) {
+                System.err.printf("corpus %s is out of date (%s), "
+                        + "changed files are read from disk%n", file, path);
+            }
+        }
+        return current;
+    }
+
+    private static String key(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    private static Corpus map(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("invalid corpus size: " + file);
+            }
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(MapMode.READ_ONLY, 0, size);
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("invalid corpus file: " + file);
+        }
+        long indexOffset = buffer.getLong(8);
+        if (indexOffset < HEADER_SIZE || indexOffset > buffer.limit()) {
+            throw new IOException("invalid corpus index: " + file);
+        }
+
+        ByteBuffer textBytes = buffer.duplicate();
+        textBytes.limit((int) indexOffset).position(HEADER_SIZE);
+        CharBuffer text = textBytes.slice().asCharBuffer();
+
+        ByteBuffer index = buffer.duplicate();
+        index.position((int) indexOffset);
+        int count = index.getInt();
+        Map<String, Entry> entries = new HashMap<>(count * 2);
+        List<Path> tests = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            String key = readString(index);
+            String charsetName = readString(index);
+            int flags = index.get();
+            int offset = index.getInt();
+            int length = index.getInt();
+            long size = index.getLong();
+            long modified = index.getLong();
+            Test262Info info = null;
+            if ((flags & TEST) != 0) {
+                String description = readString(index);
+                String errorType = readString(index);
+                info = new Test262Info(description, errorType,
+                        (flags & ONLY_STRICT) != 0, (flags & NO_STRICT) != 0,
+                        (flags & NEGATIVE) != 0);
+                tests.add(file.getFileSystem().getPath(key));
+            }
+            entries.put(key, new Entry(charsetName, offset, length, size,
+                    modified, info));
+        }
+        return new Corpus(file, text, entries,
+                Collections.unmodifiableList(tests));
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        char[] cs = new char[length];
+        buffer.asCharBuffer().get(cs);
+        buffer.position(buffer.position() + length * 2);
+        return new String(cs);
+    }
+
+    /**
+     * Packs the test files and harness files into {@code file}, the test
+     * case information is parsed once while packing
+     */
+    public static void pack(Path file, List<Path> tests, List<Path> libs,
+            String defaultCharset) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        Path tmp = Files.createTempFile(dir, "corpus", ".tmp");
+        try {
+            long indexOffset;
+            try (OutputStream os = Files.newOutputStream(tmp);
+                    DataOutputStream out = new DataOutputStream(
+                            new BufferedOutputStream(os, 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(0); // index offset, written last
+
+                List<Path> paths = new ArrayList<>(tests);
+                paths.addAll(libs);
+                List<Object[]> index = new ArrayList<>(paths.size());
+                int offset = 0;
+                for (int i = 0, len = paths.size(); i < len; ++i) {
+                    // attributes first, a concurrent change then makes the
+                    // entry stale instead of silently outdated
+                    BasicFileAttributes attrs = Files.readAttributes(
+                            paths.get(i), BasicFileAttributes.class);
+                    SourceFile source = SourceFile.read(paths.get(i),
+                            defaultCharset);
+                    String content = source.getContent();
+                    Test262Info info = i < tests.size() ? Test262Info
+                            .from(source) : null;
+                    out.writeChars(content);
+                    index.add(new Object[] { key(source.getPath()),
+                            source.getCharsetName(), offset,
+                            content.length(), attrs.size(),
+                            attrs.lastModifiedTime().toMillis(), info });
+                    offset += content.length();
+                    if (offset < 0) {
+                        throw new IOException("corpus too large");
+                    }
+                }
+                indexOffset = HEADER_SIZE + offset * 2L;
+
+                out.writeInt(index.size());
+                for (Object[] entry : index) {
+                    Test262Info info = (Test262Info) entry[6];
+                    int flags = 0;
+                    if (info != null) {
+                        flags |= TEST;
+                        flags |= info.isOnlyStrict() ? ONLY_STRICT : 0;
+                        flags |= info.isNoStrict() ? NO_STRICT : 0;
+                        flags |= info.isNegative() ? NEGATIVE : 0;
+                    }
+                    writeString(out, (String) entry[0]);
+                    writeString(out, (String) entry[1]);
+                    out.writeByte(flags);
+                    out.writeInt((Integer) entry[2]);
+                    out.writeInt((Integer) entry[3]);
+                    out.writeLong((Long) entry[4]);
+                    out.writeLong((Long) entry[5]);
+                    if (info != null) {
+                        writeString(out, info.getDescription());
+                        writeString(out, info.getErrorType());
+                    }
+                }
+            }
+            try (FileChannel channel = FileChannel.open(tmp,
+                    StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(8);
+                header.putLong(0, indexOffset);
+                channel.write(header, 8);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s)
+            throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(s.length());
+            out.writeChars(s);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+import static com.github.anba.test262.util.Functional.filterMap;
+import static com.github.anba.test262.util.Functional.intoCollection;
+import static com.github.anba.test262.util.Resources.resource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.io.input.BOMInputStream;
+
+import com.github.anba.test262.util.Functional.Mapper;
+import com.github.anba.test262.util.Functional.Predicate;
+
+/**
+ * Immutable matcher for excluded test cases: the test-case ids from all
+ * exclusion xml-files in a sorted array and the exclusion patterns combined
+ * into a single {@link Pattern}. The compiled matcher can be cached in
+ * serialized form, the cache is invalidated when any of the exclusion files
+ * or patterns change.
+ *
+ * @author André Bargull
+ *
+ */
+public final class ExclusionMatcher implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String[] ids;
+    private final Pattern pattern;
+    // computed on first use
+    private transient String fingerprint;
+
+    private ExclusionMatcher(String[] ids, Pattern pattern) {
+        this.ids = ids;
+        this.pattern = pattern;
+    }
+
+    /**
+     * Returns {@code true} if {@code id} is listed in an exclusion file
+     */
+    public boolean isExcluded(String id) {
+        return Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    /**
+     * Returns {@code true} if {@code path} matches an exclusion pattern
+     */
+    public boolean matches(String path) {
+        return pattern != null && pattern.matcher(path).matches();
+    }
+
+    /**
+     * Returns the number of excluded test-case ids
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Returns a hash of all excluded test-case ids and exclusion patterns
+     */
+    public String fingerprint() {
+        if (fingerprint == null) {
+            MessageDigest md;
+            try {
+                md = MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            for (String id : ids) {
+                md.update(id.getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+            }
+            if (pattern != null) {
+                md.update(pattern.pattern().getBytes(StandardCharsets.UTF_8));
+            }
+            fingerprint = new BigInteger(1, md.digest()).toString(16);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Creates the matcher for the exclusion files and patterns, the compiled
+     * matcher is read from or written to {@code cacheFile} unless it's
+     * {@code null}. Empty entries are ignored.
+     */
+    public static ExclusionMatcher load(List<?> fileValues,
+            List<?> patternValues, Path cacheFile) throws IOException {
+        List<String> files = nonEmpty(fileValues);
+        List<String> patterns = nonEmpty(patternValues);
+        if (cacheFile == null) {
+            return compile(files, patterns);
+        }
+        String stamp = stamp(files, patterns);
+        ExclusionMatcher matcher = readCache(cacheFile, stamp);
+        if (matcher == null) {
+            matcher = compile(files, patterns);
+            writeCache(cacheFile, stamp, matcher);
+        }
+        return matcher;
+    }
+
+    private static List<String> nonEmpty(List<?> values) {
+        return intoCollection(filterMap(values, notEmptyString, toString),
+                new ArrayList<String>());
+    }
+
+    private static ExclusionMatcher compile(List<String> files,
+            List<String> patterns) throws IOException {
+        Set<String> ids = new TreeSet<>();
+        for (String file : files) {
+            try (InputStream res = resource(file)) {
+                readExcludeXML(res, ids);
+            }
+        }
+        StringBuilder combined = new StringBuilder();
+        for (String p : patterns) {
+            if (combined.length() != 0) {
+                combined.append('|');
+            }
+            combined.append("(?:").append(p).append(')');
+        }
+        Pattern pattern = combined.length() != 0 ? Pattern.compile(combined
+                .toString()) : null;
+        return new ExclusionMatcher(ids.toArray(new String[ids.size()]),
+                pattern);
+    }
+
+    /**
+     * Streams the exclusion xml-list and adds the id of each
+     * {@code <test id="..."/>} element to {@code ids}
+     */
+    private static void readExcludeXML(InputStream is, Set<String> ids)
+            throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // turn off any validation or external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+                false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(
+                    new BOMInputStream(is), "UTF-8");
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT
+                            && "test".equals(reader.getLocalName())) {
+                        String id = reader.getAttributeValue(null, "id");
+                        if (id != null) {
+                            ids.add(id);
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Returns a description of all inputs, i.e. the patterns and the
+     * modification time and size of each exclusion file
+     */
+    private static String stamp(List<String> files, List<String> patterns)
+            throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String file : files) {
+            sb.append(file).append('\0');
+            final String RESOURCE = "resource:";
+            if (file.startsWith(RESOURCE)) {
+                URL url = Resources.class.getResource("/"
+                        + file.substring(RESOURCE.length()));
+                if (url != null) {
+                    URLConnection conn = url.openConnection();
+                    sb.append(url).append('\0')
+                            .append(conn.getLastModified()).append('\0')
+                            .append(conn.getContentLengthLong());
+                }
+            } else {
+                Path path = Paths.get(file);
+                if (Files.isRegularFile(path)) {
+                    sb.append(Files.getLastModifiedTime(path).toMillis())
+                            .append('\0').append(Files.size(path));
+                }
+            }
+            sb.append('\n');
+        }
+        for (String p : patterns) {
+            sb.append(p).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static ExclusionMatcher readCache(Path cacheFile, String stamp) {
+        if (!Files.isRegularFile(cacheFile)) {
+            return null;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(
+                new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (!stamp.equals(in.readUTF())) {
+                return null;
+            }
+            return (ExclusionMatcher) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // corrupt or outdated cache, rebuild
+            return null;
+        }
+    }
+
+    private static void writeCache(Path cacheFile, String stamp,
+            ExclusionMatcher matcher) {
+        try {
+            Path dir = cacheFile.toAbsolutePath().getParent();
+            if (dir != null) {
+                Files.createDirectories(dir);
+            }
+            Path tmp = Files.createTempFile(dir, "exclude", ".tmp");
+            try (OutputStream os = Files.newOutputStream(tmp);
+                    ObjectOutputStream out = new ObjectOutputStream(
+                            new BufferedOutputStream(os))) {
+                out.writeUTF(stamp);
+                out.writeObject(matcher);
+            }
+            Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // ignore, the cache is only an optimization
+        }
+    }
+
+    private static final Predicate<Object> notEmptyString = new Predicate<Object>() {
+        @Override
+        public boolean eval(Object value) {
+            return (value != null && !value.toString().isEmpty());
+        }
+    };
+
+    private static final Mapper<Object, String> toString = new Mapper<Object, String>() {
+        @Override
+        public String map(Object t) {
+            return t.toString();
+        }
+    };
+}
@@ -0,0 +1,341 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+import static com.github.anba.test262.util.Test262InfoIndex.escape;
+import static com.github.anba.test262.util.Test262InfoIndex.unescape;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.junit.internal.AssumptionViolatedException;
+
+/**
+ * Persistent state for incremental test runs. For every test the last result
+ * is stored together with a fingerprint of all inputs of the test, i.e. the
+ * test file, the included library files and the engine. The cached result
+ * remains valid as long as the fingerprint is unchanged.
+ * <p>
+ * The state file is line-oriented (UTF-8), each line has the form:
+ *
+ * <pre>
+ * path \t fingerprint \t includes \t status \t message
+ * </pre>
+ *
+ * @author André Bargull
+ *
+ */
+public final class IncrementalState {
+    private static final String HEADER = "#test262-incremental 1";
+
+    private static final ConcurrentMap<Path, IncrementalState> states = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Path, String> fileHashes = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Path, String> contentHashes = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final ConcurrentMap<String, Result> results = new ConcurrentHashMap<>();
+    private volatile boolean modified = false;
+
+    public enum Status {
+        PASSED, FAILED, SKIPPED
+    }
+
+    /**
+     * Cached test result
+     */
+    public static final class Result {
+        private final String fingerprint;
+        private final List<Path> includes;
+        private final Status status;
+        private final String message;
+
+        public Result(String fingerprint, List<Path> includes, Status status,
+                String message) {
+            this.fingerprint = fingerprint;
+            this.includes = includes;
+            this.status = status;
+            this.message = message;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        /**
+         * Returns the library files which were included by the test
+         */
+        public List<Path> getIncludes() {
+            return includes;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * Reports the cached result by returning normally or throwing the
+         * corresponding exception
+         */
+        public void replay() {
+            String msg = "(cached result) " + (message != null ? message : "");
+            switch (status) {
+            case FAILED:
+                throw new AssertionError(msg);
+            case SKIPPED:
+                throw new AssumptionViolatedException(msg);
+            case PASSED:
+            default:
+            }
+        }
+    }
+
+    private IncrementalState(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns the shared state for {@code file}, the state is loaded on first
+     * access
+     */
+    public static IncrementalState open(Path file) throws IOException {
+        file = file.toAbsolutePath().normalize();
+        IncrementalState state = states.get(file);
+        if (state == null) {
+            synchronized (states) {
+                state = states.get(file);
+                if (state == null) {
+                    state = new IncrementalState(file);
+                    state.load();
+                    states.put(file, state);
+                }
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Writes all modified states back to disk
+     */
+    public static void storeAll() throws IOException {
+        for (IncrementalState state : states.values()) {
+            state.store();
+        }
+    }
+
+    /**
+     * Returns the cached result for {@code path} or {@code null} if not
+     * present
+     */
+    public Result get(Path path) {
+        return get(path, null);
+    }
+
+    /**
+     * Returns the cached result for {@code path} run as {@code variant} or
+     * {@code null} if not present
+     */
+    public Result get(Path path, String variant) {
+        return results.get(key(path, variant));
+    }
+
+    /**
+     * Adds or replaces the cached result for {@code path}
+     */
+    public void put(Path path, Result result) {
+        put(path, null, result);
+    }
+
+    /**
+     * Adds or replaces the cached result for {@code path} run as
+     * {@code variant}
+     */
+    public void put(Path path, String variant, Result result) {
+        results.put(key(path, variant), result);
+        modified = true;
+    }
+
+    /**
+     * Removes the cached result for {@code path} run as {@code variant}
+     */
+    public void remove(Path path, String variant) {
+        if (results.remove(key(path, variant)) != null) {
+            modified = true;
+        }
+    }
+
+    private static String key(Path path, String variant) {
+        String key = path.toAbsolutePath().normalize().toString();
+        return variant != null ? key + "#" + variant : key;
+    }
+
+    /**
+     * Computes the fingerprint for a test from its source, the included
+     * library files and the engine description. The hash of each library
+     * file is only computed once per JVM.
+     */
+    public static String fingerprint(String source, List<Path> includes,
+            String charsetName, String engine) throws IOException {
+        MessageDigest md = sha1();
+        md.update(source.getBytes(StandardCharsets.UTF_8));
+        for (Path include : includes) {
+            md.update((byte) 0);
+            md.update(contentHash(include, charsetName).getBytes(
+                    StandardCharsets.UTF_8));
+        }
+        md.update((byte) 0);
+        md.update(engine.getBytes(StandardCharsets.UTF_8));
+        return hex(md.digest());
+    }
+
+    /**
+     * Returns the content hash of {@code file}, a missing file has the hash
+     * "missing"
+     */
+    public static String fileHash(Path file) throws IOException {
+        file = file.toAbsolutePath().normalize();
+        String hash = fileHashes.get(file);
+        if (hash == null) {
+            hash = Files.isRegularFile(file) ? hex(sha1().digest(
+                    Files.readAllBytes(file))) : "missing";
+            fileHashes.putIfAbsent(file, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the hash of the decoded content of {@code file} as seen by the
+     * script evaluation, i.e. the packed content if {@code file} is part of
+     * an opened {@link Corpus}. A missing file has the hash "missing".
+     */
+    public static String contentHash(Path file, String charsetName)
+            throws IOException {
+        file = file.toAbsolutePath().normalize();
+        String hash = contentHashes.get(file);
+        if (hash == null) {
+            if (Files.isRegularFile(file)) {
+                String content = SourceFile.read(file, charsetName)
+                        .getContent();
+                hash = hex(sha1().digest(
+                        content.getBytes(StandardCharsets.UTF_8)));
+            } else {
+                hash = "missing";
+            }
+            contentHashes.putIfAbsent(file, hash);
+        }
+        return hash;
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(
+                    Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private void load() throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file,
+                StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                // unknown format, start from scratch
+                return;
+            }
+            for (String line; (line = reader.readLine()) != null;) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 5) {
+                    continue;
+                }
+                List<Path> includes = new ArrayList<>();
+                String s = unescape(fields[2]);
+                if (s != null) {
+                    for (String include : s.split("\n")) {
+                        includes.add(Paths.get(include));
+                    }
+                }
+                Status status = Status.valueOf(fields[3]);
+                results.put(unescape(fields[0]), new Result(fields[1],
+                        Collections.unmodifiableList(includes), status,
+                        unescape(fields[4])));
+            }
+        } catch (IllegalArgumentException e) {
+            // corrupt state, start from scratch
+            results.clear();
+        }
+    }
+
+    /**
+     * Writes the state back to disk if it was modified
+     */
+    public synchronized void store() throws IOException {
+        if (!modified) {
+            return;
+        }
+        modified = false;
+        Path dir = file.getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp,
+                StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Map.Entry<String, Result> e : new TreeMap<>(results)
+                    .entrySet()) {
+                Result result = e.getValue();
+                StringBuilder includes = new StringBuilder();
+                for (Path include : result.includes) {
+                    if (includes.length() != 0) {
+                        includes.append('\n');
+                    }
+                    includes.append(include);
+                }
+                for (String s : Arrays.asList(escape(e.getKey()),
+                        result.fingerprint, escape(includes.toString()),
+                        result.status.name())) {
+                    writer.write(s);
+                    writer.write('\t');
+                }
+                writer.write(escape(result.message));
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+import static com.github.anba.test262.util.Timings.json;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * {@link ResultSink} which writes one json object per line (UTF-8):
+ * 
+ * <pre>
+ * {"id": ..., "path": ..., "outcome": ..., "error": ..., "duration": ..., "strict": ...}
+ * </pre>
+ * 
+ * The duration is given in nanoseconds. Lines are buffered and flushed in
+ * batches, so the file can be followed while the tests are running.
+ * 
+ * @author André Bargull
+ * 
+ */
+public final class JsonlResultSink extends ResultSink {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BATCH_SIZE = 100;
+
+    private BufferedWriter writer;
+    private int pending = 0;
+
+    @Override
+    public synchronized void open(Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        writer = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(file), StandardCharsets.UTF_8),
+                BUFFER_SIZE);
+    }
+
+    @Override
+    public synchronized void write(Result result) throws IOException {
+        writer.write(String.format(
+                "{\"id\": %s, \"path\": %s, \"outcome\": %s, \"error\": %s, "
+                        + "\"duration\": %d, \"strict\": %s}",
+                json(result.getId()), json(result.getPath()), json(result
+                        .getOutcome().name().toLowerCase(Locale.ROOT)),
+                json(result.getErrorType()), result.getNanos(),
+                result.isStrict()));
+        writer.newLine();
+        if (++pending >= BATCH_SIZE) {
+            writer.flush();
+            pending = 0;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
@@ -6,15 +6,49 @@
  */
 package com.github.anba.test262.util;
 
+import static com.github.anba.test262.util.Functional.map;
+import static com.github.anba.test262.util.Functional.of;
+
+import java.io.IOException;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.nio.file.Paths;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.junit.Test;
+import org.junit.internal.runners.ErrorReportingRunner;
+import org.junit.runner.Description;
 import org.junit.runner.Runner;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.manipulation.Filterable;
+import org.junit.runner.manipulation.NoTestsRemainException;
+import org.junit.runner.manipulation.Sorter;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
 import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.BlockJUnit4ClassRunner;
 import org.junit.runners.Parameterized;
@@ -22,20 +56,57 @@ import org.junit.runners.Parameterized.Parameters;
 import org.junit.runners.Suite;
 import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerScheduler;
 import org.junit.runners.model.Statement;
+import org.junit.runners.model.TestClass;
+
+import com.github.anba.test262.util.Functional.Mapper;
+import com.github.anba.test262.util.Functional.Tuple2;
+import com.github.anba.test262.util.ResultLog.Status;
+import com.github.anba.test262.util.ResultSink.Result;
 
 /**
  * JUnit {@link Suite} implementation similar to {@link Parameterized}. In
  * contrast to the latter one, this implementation gives each test a named
  * label.
+ * <p>
+ * Runner options are retrieved from the public static method annotated with
+ * {@link Options}, if present:
+ * <ul>
+ * <li>{@code parallelism}: number of worker threads to run the children, a
+ * value of {@code 0} selects the number of available processors (default:
+ * {@code 1})
+ * <li>{@code history}: runtime history file from previous runs, if present
+ * the children are run in longest-processing-time-first order. The history
+ * is updated with the runtimes of the current run. (default: none)
+ * <li>{@code results}: file for the test results, each result is passed to
+ * the {@link ResultSink} as soon as the test has finished (default: none)
+ * <li>{@code results.sink}: class-name of the {@link ResultSink} (default:
+ * {@link JsonlResultSink})
+ * </ul>
+ * <p>
+ * If the parameters are a {@link StreamingList}, children are run as soon as
+ * they're discovered. The suite description then grows while the children are
+ * run, filters are applied to each child on arrival and sorting waits for the
+ * discovery to finish.
  * 
  * @author André Bargull
  * 
  */
 public class LabelledParameterized extends Suite {
+    /**
+     * Annotation for the public static method which returns the runner
+     * {@link Configuration}
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.METHOD)
+    public static @interface Options {
+    }
 
     private static final class LabelledRunner extends BlockJUnit4ClassRunner {
         private final Object[] params;
+        // the last created test instance
+        private Object test;
 
         LabelledRunner(Class<?> clazz, Object[] params)
                 throws InitializationError {
@@ -66,7 +137,8 @@ public class LabelledParameterized extends Suite {
         protected Object createTest() throws Exception {
             // invoke the ctor with the supplied parameters for this test
             Constructor<?> ctor = getTestClass().getOnlyConstructor();
-            return ctor.newInstance(params);
+            test = ctor.newInstance(params);
+            return test;
         }
 
         @Override
@@ -76,15 +148,149 @@ public class LabelledParameterized extends Suite {
 
         @Override
         protected String testName(FrameworkMethod method) {
-            return method.getName() + "[" + getLabel() + "]";
+            return LabelledParameterized.testName(method, getLabel());
+        }
+    }
+
+    private static String testName(FrameworkMethod method, String label) {
+        return method.getName() + "[" + label + "]";
+    }
+
+    /**
+     * Placeholder for {@link LabelledRunner}, the actual runner is only
+     * created while this child is running. The description is computed
+     * without creating the runner.
+     */
+    private final class LazyRunner extends Runner implements Filterable {
+        private final Object[] params;
+        private List<Filter> filters = Collections.emptyList();
+        private LabelledRunner labelled = null;
+
+        LazyRunner(Object[] params) {
+            this.params = params;
+        }
+
+        String getLabel() {
+            return Objects.toString(params[0]);
+        }
+
+        /**
+         * Returns the test instance or {@code null} if not yet created
+         */
+        Object getTest() {
+            return labelled != null ? labelled.test : null;
+        }
+
+        private boolean shouldRun(Description description) {
+            for (Filter filter : filters) {
+                if (!filter.shouldRun(description)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Description getDescription() {
+            TestClass testClass = getTestClass();
+            Class<?> clazz = testClass.getJavaClass();
+            Description description = Description.createSuiteDescription(
+                    getLabel(), testClass.getAnnotations());
+            for (FrameworkMethod method : testClass
+                    .getAnnotatedMethods(Test.class)) {
+                Description child = Description.createTestDescription(clazz,
+                        testName(method, getLabel()), method.getAnnotations());
+                if (shouldRun(child)) {
+                    description.addChild(child);
+                }
+            }
+            return description;
+        }
+
+        @Override
+        public void filter(Filter filter) throws NoTestsRemainException {
+            List<Filter> filters = new ArrayList<>(this.filters);
+            filters.add(filter);
+            this.filters = filters;
+            if (getDescription().getChildren().isEmpty()) {
+                throw new NoTestsRemainException();
+            }
+        }
+
+        @Override
+        public void run(RunNotifier notifier) {
+            Class<?> clazz = getTestClass().getJavaClass();
+            Runner runner;
+            try {
+                labelled = new LabelledRunner(clazz, params);
+                for (Filter filter : filters) {
+                    filter.apply(labelled);
+                }
+                runner = labelled;
+            } catch (InitializationError e) {
+                runner = new ErrorReportingRunner(clazz, e);
+            } catch (NoTestsRemainException e) {
+                return;
+            }
+            runner.run(notifier);
         }
     }
 
+    private List<Object[]> params;
     private List<Runner> children;
+    private boolean streaming = false;
+    private boolean parallel = false;
+    private RuntimeHistory history = null;
+    private String resultsFile = "";
+    private String resultsSink = null;
+    private ResultSink sink = null;
+
+    // state for streaming parameters: the scheduler, which isn't accessible
+    // from the super-class, the filters and sorters to apply to each child,
+    // the suite description and the number of parameters it covers
+    private RunnerScheduler scheduler = new RunnerScheduler() {
+        @Override
+        public void schedule(Runnable childStatement) {
+            childStatement.run();
+        }
+
+        @Override
+        public void finished() {
+        }
+    };
+    private final List<Filter> filters = new ArrayList<>();
+    private final List<Sorter> sorters = new ArrayList<>();
+    private Description description = null;
+    private int described = 0;
+
+    /**
+     * Recorded events of the last child run on the current thread, only used
+     * for parallel execution
+     */
+    private final ThreadLocal<Tuple2<RecordingNotifier, RunNotifier>> recorded = new ThreadLocal<>();
 
     public LabelledParameterized(Class<?> klass) throws Throwable {
         super(klass, Collections.<Runner> emptyList());
-        children = createChildren();
+        Configuration options = retrieveOptions();
+        params = retrieveParams();
+        String historyFile = options.getString("history", "");
+        if (!historyFile.isEmpty()) {
+            history = RuntimeHistory.load(Paths.get(historyFile));
+            params = longestFirst(params, history);
+        }
+        children = createChildren(params);
+        streaming = params instanceof StreamingList;
+        resultsFile = options.getString("results", "");
+        resultsSink = options.getString("results.sink",
+                JsonlResultSink.class.getName());
+        int parallelism = options.getInt("parallelism", 1);
+        if (parallelism == 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        if (parallelism > 1) {
+            setScheduler(new ParallelScheduler(parallelism));
+            parallel = true;
+        }
     }
 
     @Override
@@ -92,17 +298,435 @@ public class LabelledParameterized extends Suite {
         return children;
     }
 
+    @Override
+    public Description getDescription() {
+        if (!streaming) {
+            return super.getDescription();
+        }
+        synchronized (this) {
+            // don't wait for test discovery to finish, children are added
+            // when they're run
+            Description suite = suiteDescription();
+            if (((StreamingList<?>) params).isFinished()) {
+                List<Object[]> ps = sorters.isEmpty() ? params
+                        : sorted(params);
+                for (int size = ps.size(); described < size; ++described) {
+                    Runner child = accept(ps.get(described));
+                    if (child != null) {
+                        suite.addChild(child.getDescription());
+                    }
+                }
+            }
+            return suite;
+        }
+    }
+
+    private synchronized Description suiteDescription() {
+        if (description == null) {
+            description = Description.createSuiteDescription(getName(),
+                    getRunnerAnnotations());
+        }
+        return description;
+    }
+
+    @Override
+    public void setScheduler(RunnerScheduler scheduler) {
+        super.setScheduler(scheduler);
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void filter(Filter filter) throws NoTestsRemainException {
+        if (!streaming) {
+            super.filter(filter);
+            return;
+        }
+        synchronized (this) {
+            filters.add(filter);
+            description = null;
+            described = 0;
+        }
+        if (((StreamingList<?>) params).isFinished()
+                && getDescription().getChildren().isEmpty()) {
+            throw new NoTestsRemainException();
+        }
+    }
+
+    @Override
+    public void sort(Sorter sorter) {
+        if (!streaming) {
+            super.sort(sorter);
+            return;
+        }
+        synchronized (this) {
+            sorters.add(sorter);
+            description = null;
+            described = 0;
+        }
+    }
+
     /**
-     * Creates the children {@link Runner} for this runner
+     * Returns the child runner for {@code p} or {@code null} if it's removed
+     * by a filter
      */
-    protected List<Runner> createChildren() throws Throwable {
-        Class<?> clazz = getTestClass().getJavaClass();
-        List<Runner> children = new ArrayList<>();
-        List<Object[]> params = retrieveParams();
-        for (Object[] p : params) {
-            children.add(new LabelledRunner(clazz, p));
+    private Runner accept(Object[] p) {
+        LazyRunner child = new LazyRunner(p);
+        for (Filter filter : filters) {
+            if (!filter.shouldRun(child.getDescription())) {
+                return null;
+            }
+            try {
+                filter.apply(child);
+            } catch (NoTestsRemainException e) {
+                return null;
+            }
         }
-        return children;
+        return child;
+    }
+
+    @Override
+    protected Statement childrenInvoker(final RunNotifier notifier) {
+        if (!streaming) {
+            return super.childrenInvoker(notifier);
+        }
+        return new Statement() {
+            @Override
+            public void evaluate() {
+                runStreamingChildren(notifier);
+            }
+        };
+    }
+
+    /**
+     * Schedules each child as soon as its parameters are available, unless
+     * the children need to be sorted first
+     */
+    private void runStreamingChildren(final RunNotifier notifier) {
+        Iterable<Object[]> ps = params;
+        if (!sorters.isEmpty()) {
+            ps = sorted(params);
+        }
+        int index = 0;
+        for (Object[] p : ps) {
+            final Runner child = accept(p);
+            synchronized (this) {
+                if (index++ >= described) {
+                    if (child != null) {
+                        suiteDescription().addChild(child.getDescription());
+                    }
+                    described = index;
+                }
+            }
+            if (child == null) {
+                continue;
+            }
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    runChild(child, notifier);
+                }
+            });
+        }
+        scheduler.finished();
+    }
+
+    /**
+     * Returns the parameters in the order of the registered sorters, waits
+     * until test discovery has finished
+     */
+    private List<Object[]> sorted(List<Object[]> params) {
+        final List<Object[]> sorted = new ArrayList<>(params);
+        for (final Sorter sorter : sorters) {
+            Collections.sort(sorted, new Comparator<Object[]>() {
+                @Override
+                public int compare(Object[] o1, Object[] o2) {
+                    return sorter.compare(new LazyRunner(o1).getDescription(),
+                            new LazyRunner(o2).getDescription());
+                }
+            });
+        }
+        return sorted;
+    }
+
+    @Override
+    protected Statement classBlock(RunNotifier notifier) {
+        final Statement statement = super.classBlock(notifier);
+        if (history == null && resultsFile.isEmpty()) {
+            return statement;
+        }
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                if (!resultsFile.isEmpty()) {
+                    sink = Reflection.__new__(resultsSink);
+                    sink.open(Paths.get(resultsFile));
+                }
+                try {
+                    statement.evaluate();
+                } finally {
+                    if (history != null) {
+                        history.store();
+                    }
+                    if (sink != null) {
+                        sink.close();
+                        sink = null;
+                    }
+                }
+            }
+        };
+    }
+
+    @Override
+    protected void runChild(Runner runner, RunNotifier notifier) {
+        long start = System.nanoTime();
+        RunNotifier childNotifier;
+        if (!parallel) {
+            childNotifier = notifier;
+        } else {
+            // record events on the worker thread, ParallelScheduler replays
+            // them
+            childNotifier = new RecordingNotifier();
+        }
+        RunListener listener = null;
+        if (sink != null && runner instanceof LazyRunner) {
+            // listeners on the recording notifier receive the events
+            // immediately, so durations are measured on the worker thread
+            listener = new ResultListener(sink, (LazyRunner) runner);
+            childNotifier.addListener(listener);
+        }
+        try {
+            super.runChild(runner, childNotifier);
+        } finally {
+            if (listener != null) {
+                childNotifier.removeListener(listener);
+            }
+        }
+        if (parallel) {
+            recorded.set(of((RecordingNotifier) childNotifier, notifier));
+        }
+        if (history != null && runner instanceof LazyRunner) {
+            history.put(((LazyRunner) runner).getLabel(), System.nanoTime()
+                    - start);
+        }
+    }
+
+    /**
+     * {@link RunListener} which passes the results of a single child to the
+     * {@link ResultSink}
+     */
+    private static final class ResultListener extends RunListener {
+        private final ResultSink sink;
+        private final LazyRunner runner;
+        private final String id;
+        private final String path;
+        private long start = -1;
+        private Failure failure = null;
+        private Failure assumption = null;
+
+        ResultListener(ResultSink sink, LazyRunner runner) {
+            Object[] params = runner.params;
+            this.sink = sink;
+            this.runner = runner;
+            this.id = Objects.toString(params[0]);
+            this.path = params.length > 1 ? Objects.toString(params[1])
+                    : null;
+        }
+
+        @Override
+        public void testStarted(Description description) {
+            start = System.nanoTime();
+            failure = null;
+            assumption = null;
+        }
+
+        @Override
+        public void testFailure(Failure failure) throws IOException {
+            if (start != -1) {
+                this.failure = failure;
+            } else {
+                // failure without a started test, e.g. initialization error
+                write(Status.ERROR, failure, 0);
+            }
+        }
+
+        @Override
+        public void testAssumptionFailure(Failure failure) {
+            assumption = failure;
+        }
+
+        @Override
+        public void testIgnored(Description description) throws IOException {
+            write(Status.IGNORED, null, 0);
+        }
+
+        @Override
+        public void testFinished(Description description) throws IOException {
+            long nanos = System.nanoTime() - start;
+            start = -1;
+            if (failure != null) {
+                write(ResultLog.status(failure.getException()), failure,
+                        nanos);
+            } else if (assumption != null) {
+                write(Status.SKIPPED, null, nanos);
+            } else {
+                write(Status.PASSED, null, nanos);
+            }
+        }
+
+        private void write(Status status, Failure failure, long nanos)
+                throws IOException {
+            Throwable e = failure != null ? failure.getException() : null;
+            Object test = runner.getTest();
+            boolean strict;
+            String errorType;
+            if (test instanceof ResultSink.Details) {
+                ResultSink.Details details = (ResultSink.Details) test;
+                strict = details.isStrict();
+                errorType = e != null ? details.getErrorType(e) : null;
+            } else {
+                strict = id.endsWith(ResultSink.STRICT_SUFFIX);
+                errorType = e != null ? e.getClass().getName() : null;
+            }
+            sink.write(new Result(id, path, status, errorType, nanos, strict));
+        }
+    }
+
+    /**
+     * Sorts the test parameters by their recorded runtime in descending
+     * order, parameters without history are weighted with the average
+     * runtime. Parameters with the same path are kept together and sorted by
+     * their combined runtime. This requires the complete list of parameters,
+     * i.e. test discovery is no longer overlapped with test execution.
+     */
+    private static List<Object[]> longestFirst(List<Object[]> params,
+            final RuntimeHistory history) {
+        if (history.isEmpty()) {
+            return params;
+        }
+        final long average = history.average();
+        List<List<Object[]>> groups = Resources.groupByPath(params);
+        final Map<List<Object[]>, Long> runtimes = new IdentityHashMap<>();
+        for (List<Object[]> group : groups) {
+            long runtime = 0;
+            for (Object[] p : group) {
+                runtime += history.get(Objects.toString(p[0]), average);
+            }
+            runtimes.put(group, runtime);
+        }
+        Collections.sort(groups, new Comparator<List<Object[]>>() {
+            @Override
+            public int compare(List<Object[]> g1, List<Object[]> g2) {
+                return Long.compare(runtimes.get(g2), runtimes.get(g1));
+            }
+        });
+        List<Object[]> sorted = new ArrayList<>(params.size());
+        for (List<Object[]> group : groups) {
+            sorted.addAll(group);
+        }
+        return sorted;
+    }
+
+    /**
+     * {@link RunnerScheduler} which runs the children on a fixed-size worker
+     * pool. Recorded test events are replayed in the original child order on
+     * the scheduling thread, so listeners (e.g. surefire) still receive all
+     * events sequentially.
+     */
+    private final class ParallelScheduler implements RunnerScheduler {
+        private final ExecutorService executor;
+        private final Deque<Future<Tuple2<RecordingNotifier, RunNotifier>>> pending = new ArrayDeque<>();
+
+        ParallelScheduler(int parallelism) {
+            final String name = getTestClass().getJavaClass().getSimpleName();
+            executor = Executors.newFixedThreadPool(parallelism,
+                    new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, String.format(
+                                    "%s-worker-%d", name,
+                                    count.incrementAndGet()));
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+
+        @Override
+        public void schedule(final Runnable childStatement) {
+            pending.add(executor
+                    .submit(new Callable<Tuple2<RecordingNotifier, RunNotifier>>() {
+                        @Override
+                        public Tuple2<RecordingNotifier, RunNotifier> call() {
+                            try {
+                                childStatement.run();
+                                return recorded.get();
+                            } finally {
+                                recorded.remove();
+                            }
+                        }
+                    }));
+            replay(false);
+        }
+
+        @Override
+        public void finished() {
+            try {
+                replay(true);
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        /**
+         * Replays the events of all completed children in order, waits for
+         * pending children iff {@code wait} is {@code true}
+         */
+        private void replay(boolean wait) {
+            while (!pending.isEmpty() && (wait || pending.peek().isDone())) {
+                Tuple2<RecordingNotifier, RunNotifier> events;
+                try {
+                    events = pending.poll().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+                events._1().replay(events._2());
+            }
+        }
+    }
+
+    /**
+     * Creates the children {@link Runner} for this runner, the returned list
+     * is a view on {@code params} which creates the children on demand
+     */
+    protected List<Runner> createChildren(final List<Object[]> params)
+            throws Throwable {
+        final Mapper<Object[], Runner> toRunner = new Mapper<Object[], Runner>() {
+            @Override
+            public Runner map(Object[] p) {
+                return new LazyRunner(p);
+            }
+        };
+        return new AbstractList<Runner>() {
+            @Override
+            public Runner get(int index) {
+                return toRunner.map(params.get(index));
+            }
+
+            @Override
+            public int size() {
+                return params.size();
+            }
+
+            @Override
+            public Iterator<Runner> iterator() {
+                return map(params, toRunner).iterator();
+            }
+        };
     }
 
     /**
@@ -121,6 +745,22 @@ public class LabelledParameterized extends Suite {
         throw new IllegalStateException();
     }
 
+    /**
+     * Retrieves the runner options as specified in {@link Options}
+     */
+    protected Configuration retrieveOptions() throws Throwable {
+        List<FrameworkMethod> methods = getTestClass().getAnnotatedMethods(
+                Options.class);
+        final int PUBLIC_STATIC = Modifier.PUBLIC | Modifier.STATIC;
+        for (FrameworkMethod fm : methods) {
+            Method m = fm.getMethod();
+            if ((m.getModifiers() & PUBLIC_STATIC) != 0) {
+                return cast(fm.invokeExplosively(null));
+            }
+        }
+        return new BaseConfiguration();
+    }
+
     @SuppressWarnings("unchecked")
     private final <T> T cast(Object o) {
         return (T) o;
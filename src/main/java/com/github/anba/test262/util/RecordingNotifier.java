@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.runner.Description;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runner.notification.StoppedByUserException;
+
+/**
+ * {@link RunNotifier} which records all test events, so they can be replayed
+ * later on a different {@link RunNotifier} through
+ * {@link RecordingNotifier#replay(RunNotifier)}. Listeners registered on this
+ * notifier still receive all events immediately.
+ *
+ * @author André Bargull
+ *
+ */
+final class RecordingNotifier extends RunNotifier {
+    private interface Event {
+        void replay(RunNotifier notifier);
+    }
+
+    private final List<Event> events = new ArrayList<>();
+
+    /**
+     * Replays all recorded events in their original order
+     */
+    public void replay(RunNotifier notifier) {
+        for (Event event : events) {
+            event.replay(notifier);
+        }
+    }
+
+    @Override
+    public void fireTestStarted(final Description description)
+            throws StoppedByUserException {
+        events.add(new Event() {
+            @Override
+            public void replay(RunNotifier notifier) {
+                notifier.fireTestStarted(description);
+            }
+        });
+        super.fireTestStarted(description);
+    }
+
+    @Override
+    public void fireTestFailure(final Failure failure) {
+        events.add(new Event() {
+            @Override
+            public void replay(RunNotifier notifier) {
+                notifier.fireTestFailure(failure);
+            }
+        });
+        super.fireTestFailure(failure);
+    }
+
+    @Override
+    public void fireTestAssumptionFailed(final Failure failure) {
+        events.add(new Event() {
+            @Override
+            public void replay(RunNotifier notifier) {
+                notifier.fireTestAssumptionFailed(failure);
+            }
+        });
+        super.fireTestAssumptionFailed(failure);
+    }
+
+    @Override
+    public void fireTestIgnored(final Description description) {
+        events.add(new Event() {
+            @Override
+            public void replay(RunNotifier notifier) {
+                notifier.fireTestIgnored(description);
+            }
+        });
+        super.fireTestIgnored(description);
+    }
+
+    @Override
+    public void fireTestFinished(final Description description) {
+        events.add(new Event() {
+            @Override
+            public void replay(RunNotifier notifier) {
+                notifier.fireTestFinished(description);
+            }
+        });
+        super.fireTestFinished(description);
+    }
+}
@@ -6,7 +6,14 @@
  */
 package com.github.anba.test262.util;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.mozilla.javascript.FunctionObject;
 import org.mozilla.javascript.ScriptableObject;
@@ -38,24 +45,84 @@ public final class Reflection {
      * object
      */
     public static void __init__(ScriptableObject object) {
-        for (Method m : object.getClass().getMethods()) {
-            if (m.isAnnotationPresent(JSFunction.class)) {
-                JSFunction f = m.getAnnotation(JSFunction.class);
-                __def__(object, f.value(), m);
-            }
+        for (Method m : functions.get(object.getClass())) {
+            JSFunction f = m.getAnnotation(JSFunction.class);
+            __def__(object, f.value(), m);
         }
     }
 
+    /**
+     * Per-class cache of all methods annotated with {@link JSFunction}, avoids
+     * scanning all public methods for every new global object
+     */
+    private static final ClassValue<Method[]> functions = new ClassValue<Method[]>() {
+        @Override
+        protected Method[] computeValue(Class<?> type) {
+            List<Method> methods = new ArrayList<>();
+            for (Method m : type.getMethods()) {
+                if (m.isAnnotationPresent(JSFunction.class)) {
+                    methods.add(m);
+                }
+            }
+            return methods.toArray(new Method[methods.size()]);
+        }
+    };
+
     /**
      * Creates a new instance for the class-name
      */
-    @SuppressWarnings("unchecked")
     public static <T> T __new__(String classname) {
+        return Reflection.<T> __factory__(classname).newInstance();
+    }
+
+    /**
+     * Factory for new instances of a class
+     */
+    public interface Factory<T> {
+        T newInstance();
+    }
+
+    private static final ConcurrentMap<String, Factory<?>> factories = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the factory for the class-name, the class and its public no-arg
+     * constructor are only resolved once
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Factory<T> __factory__(String classname) {
+        Factory<?> factory = factories.get(classname);
+        if (factory == null) {
+            factory = newFactory(classname);
+            Factory<?> existing = factories.putIfAbsent(classname, factory);
+            if (existing != null) {
+                factory = existing;
+            }
+        }
+        return (Factory<T>) factory;
+    }
+
+    private static Factory<Object> newFactory(String classname) {
+        final MethodHandle ctor;
         try {
-            return (T) Class.forName(classname).newInstance();
-        } catch (InstantiationException | IllegalAccessException
-                | ClassNotFoundException e) {
+            Class<?> c = Class.forName(classname);
+            ctor = MethodHandles.publicLookup().findConstructor(c,
+                    MethodType.methodType(void.class)).asType(
+                    MethodType.methodType(Object.class));
+        } catch (ClassNotFoundException | NoSuchMethodException
+                | IllegalAccessException e) {
             throw new IllegalArgumentException(e);
         }
+        return new Factory<Object>() {
+            @Override
+            public Object newInstance() {
+                try {
+                    return (Object) ctor.invokeExact();
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new IllegalArgumentException(e);
+                }
+            }
+        };
     }
 }
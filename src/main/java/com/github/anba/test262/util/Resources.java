@@ -6,50 +6,36 @@
  */
 package com.github.anba.test262.util;
 
-import static com.github.anba.test262.util.Functional.filterMap;
-
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.nio.file.FileSystems;
-import java.nio.file.FileVisitOption;
-import java.nio.file.FileVisitResult;
-import java.nio.file.FileVisitor;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
-import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
-import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.NoSuchElementException;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.commons.configuration.interpol.ConfigurationInterpolator;
-import org.apache.commons.io.input.BOMInputStream;
 import org.apache.commons.lang.text.StrLookup;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-
-import com.github.anba.test262.util.Functional.Mapper;
-import com.github.anba.test262.util.Functional.Predicate;
 
 /**
  * @author André Bargull
@@ -60,59 +46,347 @@ public final class Resources {
     }
 
     /**
-     * Collects all test cases from the individual javascript files
-     * 
+     * Collects all test cases from the individual javascript files, the test
+     * directory is searched in parallel. Test cases are returned in the same
+     * order as from
+     * {@link #streamTestCases(String, ExclusionMatcher, boolean, List)}.
+     * One test case is created per label suffix in {@code variants}.
      */
     public static List<Object[]> collectTestCases(String testpath,
-            List<?> values, final boolean only_excluded,
-            final Pattern excludePattern) throws IOException {
-        // base directory to search for test javascript files
-        final Path base = Paths.get(testpath);
+            ExclusionMatcher exclusions, boolean only_excluded,
+            List<String> variants) throws IOException {
+        TestCaseSelector selector = new TestCaseSelector(testpath,
+                exclusions, only_excluded, variants);
+        if (!Files.isDirectory(selector.base)) {
+            List<Object[]> files = new ArrayList<>();
+            walkTestCases(selector, selector.base, files);
+            return files;
+        }
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            return pool.invoke(new WalkTask(selector, selector.base));
+        } catch (RuntimeException e) {
+            IOException cause = ioCause(e);
+            if (cause != null) {
+                throw cause;
+            }
+            throw e;
+        } finally {
+            pool.shutdown();
+        }
+    }
 
-        // set of test-case id to exclude from testing
-        final Set<String> exclude = readExcludeXMLs(values);
+    /**
+     * Returns the {@link IOException} which caused {@code e} or {@code null}
+     */
+    private static IOException ioCause(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof IOException) {
+                return (IOException) t;
+            }
+        }
+        return null;
+    }
 
-        final List<Object[]> files = new ArrayList<>();
-        Set<FileVisitOption> options = Collections.emptySet();
-        int depth = Integer.MAX_VALUE;
-        final Pattern pattern = Pattern.compile("(.+?)(?:\\.([^.]*)$|$)");
-        final PathMatcher matcher = FileSystems.getDefault().getPathMatcher(
-                "glob:**/*.js");
+    /**
+     * Collects all test cases from the packed corpus instead of searching the
+     * test directory, test cases are returned in the same order as from
+     * {@link #collectTestCases(String, ExclusionMatcher, boolean, List)}
+     */
+    public static List<Object[]> corpusTestCases(Corpus corpus,
+            String testpath, ExclusionMatcher exclusions,
+            boolean only_excluded, List<String> variants) {
+        // corpus paths are absolute
+        TestCaseSelector selector = new TestCaseSelector(Paths.get(testpath)
+                .toAbsolutePath().normalize().toString(), exclusions,
+                only_excluded, variants);
+        List<Object[]> files = new ArrayList<>();
+        for (Path file : corpus.tests()) {
+            if (!file.startsWith(selector.base)) {
+                continue;
+            }
+            Object[] testcase = selector.select(file);
+            if (testcase != null) {
+                selector.addTo(testcase, files);
+            }
+        }
+        return files;
+    }
 
-        FileVisitor<Path> visitor = new SimpleFileVisitor<Path>() {
+    /**
+     * Collects all test cases from the individual javascript files on a
+     * background thread, the returned list is filled while the directory walk
+     * is still in progress. Each chapter directory is searched in parallel
+     * and its test cases are added in order as soon as the chapter and all
+     * preceding chapters are complete.
+     */
+    public static StreamingList<Object[]> streamTestCases(
+            final String testpath, final ExclusionMatcher exclusions,
+            final boolean only_excluded, final List<String> variants) {
+        final StreamingList<Object[]> files = new StreamingList<>();
+        Thread walker = new Thread(new Runnable() {
             @Override
-            public FileVisitResult visitFile(Path file,
-                    BasicFileAttributes attrs) throws IOException {
-                L1: {
-                    if (!attrs.isRegularFile()) {
-                        break L1;
-                    }
-                    String rel = base.relativize(file).toString();
-                    if (excludePattern.matcher(rel).matches()) {
-                        break L1;
+            public void run() {
+                ForkJoinPool pool = new ForkJoinPool();
+                try {
+                    TestCaseSelector selector = new TestCaseSelector(
+                            testpath, exclusions, only_excluded, variants);
+                    streamChapters(selector, pool, files);
+                    files.finish();
+                } catch (Throwable t) {
+                    IOException cause = ioCause(t);
+                    files.fail(cause != null ? cause : t);
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        }, "test262-discovery");
+        walker.setDaemon(true);
+        walker.start();
+        return files;
+    }
+
+    /**
+     * Starts a {@link WalkTask} for each directory below the test directory
+     * and adds the test cases to {@code files} in directory order
+     */
+    @SuppressWarnings("unchecked")
+    private static void streamChapters(TestCaseSelector selector,
+            ForkJoinPool pool, Collection<Object[]> files) throws IOException {
+        if (!Files.isDirectory(selector.base)) {
+            walkTestCases(selector, selector.base, files);
+            return;
+        }
+        // pending chapters or test case parameters in directory order
+        List<Object> entries = new ArrayList<>();
+        for (Path entry : sortedEntries(selector.base)) {
+            BasicFileAttributes attrs = attributes(entry);
+            if (attrs.isDirectory()) {
+                entries.add(pool.submit(new WalkTask(selector, entry)));
+            } else {
+                Object[] testcase = selector.select(entry, attrs);
+                if (testcase != null) {
+                    entries.add(testcase);
+                }
+            }
+        }
+        for (Object entry : entries) {
+            if (entry instanceof ForkJoinTask) {
+                for (Object[] testcase : ((ForkJoinTask<List<Object[]>>) entry)
+                        .join()) {
+                    files.add(testcase);
+                }
+            } else {
+                selector.addTo((Object[]) entry, files);
+            }
+        }
+    }
+
+    /**
+     * Selects the test case files from the test directory
+     */
+    private static final class TestCaseSelector {
+        // base directory to search for test javascript files
+        final Path base;
+        // excluded test-case ids and exclusion patterns
+        final ExclusionMatcher exclusions;
+        final boolean only_excluded;
+        // label suffixes, one test case per suffix
+        final List<String> variants;
+
+        TestCaseSelector(String testpath, ExclusionMatcher exclusions,
+                boolean only_excluded, List<String> variants) {
+            this.base = Paths.get(testpath);
+            this.exclusions = exclusions;
+            this.only_excluded = only_excluded;
+            this.variants = variants;
+        }
+
+        /**
+         * Adds the test case for each variant to {@code files}
+         */
+        void addTo(Object[] testcase, Collection<Object[]> files) {
+            for (String variant : variants) {
+                files.add(array(testcase[0] + variant, testcase[1]));
+            }
+        }
+
+        /**
+         * Returns the test case parameters for {@code file} or {@code null}
+         * if the file is not selected
+         */
+        Object[] select(Path file, BasicFileAttributes attrs) {
+            if (!attrs.isRegularFile()) {
+                return null;
+            }
+            return select(file);
+        }
+
+        /**
+         * Same as {@link #select(Path, BasicFileAttributes)} for a file which
+         * is known to be a regular file
+         */
+        Object[] select(Path file) {
+            String filename = file.getFileName().toString();
+            if (!filename.endsWith(".js")) {
+                return null;
+            }
+            if (exclusions.matches(base.relativize(file).toString())) {
+                return null;
+            }
+            // test name is the file name without extension
+            int dot = filename.lastIndexOf('.');
+            String testname = dot > 0 ? filename.substring(0, dot) : filename;
+            if (exclusions.isExcluded(testname) ^ only_excluded) {
+                return null;
+            }
+            return array(testname, file.toString());
+        }
+    }
+
+    /**
+     * Returns the directory entries of {@code dir} in sorted order
+     */
+    private static List<Path> sortedEntries(Path dir) throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path entry : stream) {
+                entries.add(entry);
+            }
+        }
+        Collections.sort(entries);
+        return entries;
+    }
+
+    private static BasicFileAttributes attributes(Path path)
+            throws IOException {
+        return Files.readAttributes(path, BasicFileAttributes.class,
+                LinkOption.NOFOLLOW_LINKS);
+    }
+
+    /**
+     * Walks the test directory and adds all test cases to {@code files}
+     */
+    private static void walkTestCases(TestCaseSelector selector, Path path,
+            Collection<Object[]> files) throws IOException {
+        BasicFileAttributes attrs = attributes(path);
+        if (attrs.isDirectory()) {
+            for (Path entry : sortedEntries(path)) {
+                walkTestCases(selector, entry, files);
+            }
+        } else {
+            Object[] testcase = selector.select(path, attrs);
+            if (testcase != null) {
+                selector.addTo(testcase, files);
+            }
+        }
+    }
+
+    /**
+     * Parallel version of
+     * {@link Resources#walkTestCases(TestCaseSelector, Path, Collection)}, a
+     * new sub-task is forked for each directory
+     */
+    @SuppressWarnings("serial")
+    private static final class WalkTask extends RecursiveTask<List<Object[]>> {
+        private final TestCaseSelector selector;
+        private final Path dir;
+
+        WalkTask(TestCaseSelector selector, Path dir) {
+            this.selector = selector;
+            this.dir = dir;
+        }
+
+        @Override
+        protected List<Object[]> compute() {
+            try {
+                // sub-tasks or test case parameters in directory order
+                List<Object> entries = new ArrayList<>();
+                for (Path entry : sortedEntries(dir)) {
+                    BasicFileAttributes attrs = attributes(entry);
+                    if (attrs.isDirectory()) {
+                        WalkTask task = new WalkTask(selector, entry);
+                        task.fork();
+                        entries.add(task);
+                    } else {
+                        Object[] testcase = selector.select(entry, attrs);
+                        if (testcase != null) {
+                            entries.add(testcase);
+                        }
                     }
-                    if (!matcher.matches(file)) {
-                        break L1;
+                }
+                List<Object[]> files = new ArrayList<>();
+                for (Object entry : entries) {
+                    if (entry instanceof WalkTask) {
+                        files.addAll(((WalkTask) entry).join());
+                    } else {
+                        selector.addTo((Object[]) entry, files);
                     }
-                    String filename = file.getFileName().toString();
-                    Matcher matcher = pattern.matcher(filename);
-                    if (!matcher.matches()) {
-                        assert false : "regexp failure";
+                }
+                return files;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Suffix of keys whose values are regular expressions, these values are
+     * never split at the list delimiter
+     */
+    private static final String REGEXP_KEY_SUFFIX = "exclude_re";
+
+    /**
+     * Returns a new, empty {@link PropertiesConfiguration}. Values are split
+     * at ',' into lists, except for regular expressions (keys ending with
+     * "exclude_re") which may contain ',' themselves, e.g. {@code \d{1,3}}.
+     * Repeated regular expression keys still result in a list.
+     */
+    @SuppressWarnings("serial")
+    public static PropertiesConfiguration newPropertiesConfiguration() {
+        return new PropertiesConfiguration() {
+            @Override
+            public void addProperty(String key, Object value) {
+                if (!key.endsWith(REGEXP_KEY_SUFFIX)) {
+                    super.addProperty(key, value);
+                    return;
+                }
+                fireEvent(EVENT_ADD_PROPERTY, key, value, true);
+                if (value instanceof Collection) {
+                    for (Object v : (Collection<?>) value) {
+                        addPropertyDirect(key, unescapeDelimiter(v));
                     }
-                    String testname = matcher.group(1);
-                    if (exclude.contains(testname) ^ only_excluded) {
-                        break L1;
+                } else {
+                    addPropertyDirect(key, unescapeDelimiter(value));
+                }
+                fireEvent(EVENT_ADD_PROPERTY, key, value, false);
+            }
+
+            @Override
+            public void save(Writer writer) throws ConfigurationException {
+                // one line per regular expression, they're not split when
+                // loaded
+                for (Iterator<?> keys = getKeys(); keys.hasNext();) {
+                    String key = keys.next().toString();
+                    if (key.endsWith(REGEXP_KEY_SUFFIX)) {
+                        getLayout().setSingleLine(key, false);
                     }
-                    files.add(array(testname, file.toString()));
                 }
+                super.save(writer);
+            }
 
-                return FileVisitResult.CONTINUE;
+            /**
+             * Saved values have an escaped delimiter, "\," is the same as ","
+             * in a regular expression
+             */
+            private Object unescapeDelimiter(Object value) {
+                if (value instanceof String) {
+                    return ((String) value).replace("\\" + getListDelimiter(),
+                            String.valueOf(getListDelimiter()));
+                }
+                return value;
             }
         };
-
-        Files.walkFileTree(base, options, depth, visitor);
-
-        return files;
     }
 
     /**
@@ -150,7 +424,7 @@ public final class Resources {
      */
     public static Configuration loadConfiguration(String uri) {
         try {
-            PropertiesConfiguration config = new PropertiesConfiguration();
+            PropertiesConfiguration config = newPropertiesConfiguration();
             // entries are mandatory unless an explicit default value was given
             config.setThrowExceptionOnMissing(true);
             config.getInterpolator().setParentInterpolator(MISSING_VAR);
@@ -164,87 +438,97 @@ public final class Resources {
     }
 
     /**
-     * Loads the named resource through
-     * {@link Class#getResourceAsStream(String)} if the uri is prepended with
-     * "resource:", otherwise loads the resource with
-     * {@link Files#newInputStream(Path, java.nio.file.OpenOption...)}
+     * Applies the overlay configuration file {@code uri} to
+     * {@code configuration}, entries from the overlay replace existing
+     * entries
      */
-    public static InputStream resource(String uri) throws IOException {
-        final String RESOURCE = "resource:";
-        if (uri.startsWith(RESOURCE)) {
-            String name = "/" + uri.substring(RESOURCE.length());
-            InputStream res = Resources.class.getResourceAsStream(name);
-            if (res == null) {
-                throw new IOException("resource not found: " + name);
+    public static void applyOverlay(Configuration configuration, String uri) {
+        try (InputStream res = resource(uri)) {
+            PropertiesConfiguration overlay = newPropertiesConfiguration();
+            overlay.load(res, "UTF-8");
+            for (Iterator<?> keys = overlay.getKeys(); keys.hasNext();) {
+                String key = keys.next().toString();
+                configuration.setProperty(key, overlay.getProperty(key));
             }
-            return res;
-        } else {
-            return Files.newInputStream(Paths.get(uri));
+        } catch (ConfigurationException | IOException e) {
+            throw new RuntimeException(e);
         }
     }
 
     /**
-     * Reads all exlusion xml-files from the configuration
+     * Groups the test cases by their path (the second parameter, or the label
+     * if not present) in order of first appearance, i.e. the strict and
+     * non-strict variant of a test file are in the same group. Schedulers
+     * keep each group together, so both variants can share the source file.
      */
-    private static Set<String> readExcludeXMLs(List<?> values)
-            throws IOException {
-        Set<String> exclude = new HashSet<>();
-        for (String s : filterMap(values, notEmptyString, toString)) {
-            try (InputStream res = resource(s)) {
-                exclude.addAll(readExcludeXML(res));
+    public static List<List<Object[]>> groupByPath(List<Object[]> testcases) {
+        Map<String, List<Object[]>> groups = new LinkedHashMap<>();
+        for (Object[] testcase : testcases) {
+            String key = Objects.toString(testcase[testcase.length > 1 ? 1
+                    : 0]);
+            List<Object[]> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<>(2);
+                groups.put(key, group);
             }
+            group.add(testcase);
         }
-        return exclude;
+        return new ArrayList<>(groups.values());
     }
 
     /**
-     * Load the exclusion xml-list for invalid test cases from the
-     * {@link InputStream}
+     * Reads the test cases from a test list file as written by
+     * {@link #writeTestList(Path, List)}
      */
-    private static Set<String> readExcludeXML(InputStream is)
-            throws IOException {
-        Set<String> exclude = new HashSet<>();
-        Reader reader = new InputStreamReader(new BOMInputStream(is), "UTF-8");
-        Document doc = xml(reader);
-        NodeList ns = doc.getDocumentElement().getElementsByTagName("test");
-        for (int i = 0, len = ns.getLength(); i < len; ++i) {
-            NamedNodeMap attrs = ns.item(i).getAttributes();
-            String id = attrs.getNamedItem("id").getNodeValue();
-            exclude.add(id);
+    public static List<Object[]> readTestList(Path file) throws IOException {
+        List<Object[]> testcases = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file,
+                StandardCharsets.UTF_8)) {
+            for (String line; (line = reader.readLine()) != null;) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    testcases.add(array(line.substring(0, tab),
+                            line.substring(tab + 1)));
+                }
+            }
         }
-        return exclude;
+        return testcases;
     }
 
     /**
-     * Reads the xml-structure from the {@link Reader} and returns the
-     * corresponding {@link Document}
+     * Writes the test cases to a test list file, each line has the form
+     * "testname \t path"
      */
-    public static Document xml(Reader xml) throws IOException {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-
-        // turn off any validation or namespace features
-        factory.setNamespaceAware(false);
-        factory.setValidating(false);
-        List<String> features = Arrays
-                .asList("http://xml.org/sax/features/namespaces",
-                        "http://xml.org/sax/features/validation",
-                        "http://apache.org/xml/features/nonvalidating/load-dtd-grammar",
-                        "http://apache.org/xml/features/nonvalidating/load-external-dtd");
-        for (String feature : features) {
-            try {
-                factory.setFeature(feature, false);
-            } catch (ParserConfigurationException e) {
-                // ignore invalid feature names
+    public static void writeTestList(Path file, List<Object[]> testcases)
+            throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file,
+                StandardCharsets.UTF_8)) {
+            for (Object[] testcase : testcases) {
+                writer.write(testcase[0].toString());
+                writer.write('\t');
+                writer.write(testcase[1].toString());
+                writer.newLine();
             }
         }
+    }
 
-        try {
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            InputSource source = new InputSource(xml);
-            Document doc = builder.parse(source);
-            return doc;
-        } catch (ParserConfigurationException | SAXException e) {
-            throw new IOException(e);
+    /**
+     * Loads the named resource through
+     * {@link Class#getResourceAsStream(String)} if the uri is prepended with
+     * "resource:", otherwise loads the resource with
+     * {@link Files#newInputStream(Path, java.nio.file.OpenOption...)}
+     */
+    public static InputStream resource(String uri) throws IOException {
+        final String RESOURCE = "resource:";
+        if (uri.startsWith(RESOURCE)) {
+            String name = "/" + uri.substring(RESOURCE.length());
+            InputStream res = Resources.class.getResourceAsStream(name);
+            if (res == null) {
+                throw new IOException("resource not found: " + name);
+            }
+            return res;
+        } else {
+            return Files.newInputStream(Paths.get(uri));
         }
     }
 
@@ -252,18 +536,4 @@ public final class Resources {
     private static <T> T[] array(T... rest) {
         return rest;
     }
-
-    private static final Predicate<Object> notEmptyString = new Predicate<Object>() {
-        @Override
-        public boolean eval(Object value) {
-            return (value != null && !value.toString().isEmpty());
-        }
-    };
-
-    private static final Mapper<Object, String> toString = new Mapper<Object, String>() {
-        @Override
-        public String map(Object t) {
-            return t.toString();
-        }
-    };
 }
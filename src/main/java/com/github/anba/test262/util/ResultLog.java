@@ -0,0 +1,272 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+import static com.github.anba.test262.util.Test262InfoIndex.escape;
+import static com.github.anba.test262.util.Test262InfoIndex.unescape;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+/**
+ * Line-oriented log of test results (UTF-8). Each event is written and
+ * flushed immediately, so a crashed JVM only loses the test in progress. Each
+ * line has the form:
+ *
+ * <pre>
+ * status \t className \t name \t nanos \t type \t message \t trace
+ * </pre>
+ *
+ * @author André Bargull
+ *
+ */
+public final class ResultLog {
+    private ResultLog() {
+    }
+
+    public enum Status {
+        /** test was started, but has not yet finished */
+        STARTED,
+        /** test passed */
+        PASSED,
+        /** test failed with an {@link AssertionError} */
+        FAILURE,
+        /** test failed with any other exception */
+        ERROR,
+        /** test was aborted with {@link Test262TimeoutError} */
+        TIMEOUT,
+        /** test was skipped due to a failed assumption */
+        SKIPPED,
+        /** test is ignored */
+        IGNORED,
+        /** end marker, all tests have been run */
+        FINISHED
+    }
+
+    /**
+     * Single entry of the result log
+     */
+    public static final class Entry {
+        private final Status status;
+        private final String className;
+        private final String name;
+        private final long nanos;
+        private final String type;
+        private final String message;
+        private final String trace;
+
+        public Entry(Status status, String className, String name,
+                long nanos, String type, String message, String trace) {
+            this.status = status;
+            this.className = className;
+            this.name = name;
+            this.nanos = nanos;
+            this.type = type;
+            this.message = message;
+            this.trace = trace;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Returns the exception class-name for failed tests
+         */
+        public String getType() {
+            return type;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public String getTrace() {
+            return trace;
+        }
+    }
+
+    /**
+     * Returns a new {@link RunListener} which writes all test results to
+     * {@code file}
+     */
+    public static Writer newWriter(Path file) throws IOException {
+        return new Writer(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads all complete entries from {@code file}, a truncated last line is
+     * ignored
+     */
+    public static List<Entry> read(Path file) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        if (!Files.isRegularFile(file)) {
+            return entries;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file,
+                StandardCharsets.UTF_8)) {
+            for (String line; (line = reader.readLine()) != null;) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 7) {
+                    continue;
+                }
+                try {
+                    Status status = Status.valueOf(fields[0]
+                            .toUpperCase(Locale.ROOT));
+                    entries.add(new Entry(status, unescape(fields[1]),
+                            unescape(fields[2]), Long.parseLong(fields[3]),
+                            unescape(fields[4]), unescape(fields[5]),
+                            unescape(fields[6])));
+                } catch (IllegalArgumentException e) {
+                    // incomplete line
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the status for a failed test
+     */
+    static Status status(Throwable e) {
+        if (e instanceof Test262TimeoutError) {
+            return Status.TIMEOUT;
+        } else if (e instanceof AssertionError) {
+            return Status.FAILURE;
+        }
+        return Status.ERROR;
+    }
+
+    /**
+     * {@link RunListener} which writes the result log
+     */
+    public static final class Writer extends RunListener implements Closeable {
+        private final BufferedWriter writer;
+        private final Map<Description, Long> started = new HashMap<>();
+        private final Map<Description, Failure> failures = new HashMap<>();
+        private final Map<Description, Failure> assumptions = new HashMap<>();
+
+        private Writer(BufferedWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            writer.close();
+        }
+
+        @Override
+        public synchronized void testStarted(Description description)
+                throws IOException {
+            started.put(description, System.nanoTime());
+            write(Status.STARTED, description, 0, null);
+        }
+
+        @Override
+        public synchronized void testFailure(Failure failure)
+                throws IOException {
+            Description description = failure.getDescription();
+            if (started.containsKey(description)) {
+                failures.put(description, failure);
+            } else {
+                // class level failure, e.g. from @BeforeClass
+                write(Status.ERROR, description, 0, failure);
+            }
+        }
+
+        @Override
+        public synchronized void testAssumptionFailure(Failure failure) {
+            assumptions.put(failure.getDescription(), failure);
+        }
+
+        @Override
+        public synchronized void testIgnored(Description description)
+                throws IOException {
+            write(Status.IGNORED, description, 0, null);
+        }
+
+        @Override
+        public synchronized void testFinished(Description description)
+                throws IOException {
+            Long start = started.remove(description);
+            long nanos = start != null ? System.nanoTime() - start : 0;
+            Failure failure = failures.remove(description);
+            Failure assumption = assumptions.remove(description);
+            if (failure != null) {
+                Status status = ResultLog.status(failure.getException());
+                write(status, description, nanos, failure);
+            } else if (assumption != null) {
+                write(Status.SKIPPED, description, nanos, assumption);
+            } else {
+                write(Status.PASSED, description, nanos, null);
+            }
+        }
+
+        @Override
+        public synchronized void testRunFinished(Result result)
+                throws IOException {
+            writeLine(Status.FINISHED, "", "", 0, null, null, null);
+        }
+
+        private void write(Status status, Description description,
+                long nanos, Failure failure) throws IOException {
+            String className = description.getClassName();
+            String name = description.getMethodName();
+            if (name == null) {
+                name = description.getDisplayName();
+            }
+            if (failure == null) {
+                writeLine(status, className, name, nanos, null, null, null);
+            } else {
+                Throwable e = failure.getException();
+                writeLine(status, className, name, nanos,
+                        e != null ? e.getClass().getName() : null,
+                        failure.getMessage(), failure.getTrace());
+            }
+        }
+
+        private void writeLine(Status status, String className, String name,
+                long nanos, String type, String message, String trace)
+                throws IOException {
+            writer.write(status.name().toLowerCase(Locale.ROOT));
+            for (String s : new String[] { className, name,
+                    Long.toString(nanos), type, message, trace }) {
+                writer.write('\t');
+                writer.write(escape(s));
+            }
+            writer.newLine();
+            writer.flush();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import com.github.anba.test262.util.ResultLog.Status;
+
+/**
+ * Receives the result of each test as soon as it has finished, see the
+ * {@code results} option of {@link LabelledParameterized}. Implementations
+ * need a public no-arg constructor and must be thread-safe, results are
+ * reported from the worker threads.
+ * 
+ * @author André Bargull
+ * 
+ */
+public abstract class ResultSink implements Closeable {
+    /**
+     * Label suffix for tests which are run in strict mode (dual mode only)
+     */
+    public static final String STRICT_SUFFIX = " (strict)";
+
+    /**
+     * Opens the sink, results are written to {@code file}
+     */
+    public abstract void open(Path file) throws IOException;
+
+    /**
+     * Writes a single test result
+     */
+    public abstract void write(Result result) throws IOException;
+
+    /**
+     * Implemented by test classes to describe their result, otherwise the
+     * strict mode is taken from the label and the error type is the class
+     * name of the failure
+     */
+    public interface Details {
+        /**
+         * Returns whether the test is run in strict mode
+         */
+        boolean isStrict();
+
+        /**
+         * Returns the error type of {@code failure}
+         */
+        String getErrorType(Throwable failure);
+    }
+
+    /**
+     * Result of a single test
+     */
+    public static final class Result {
+        private final String id;
+        private final String path;
+        private final Status outcome;
+        private final String errorType;
+        private final long nanos;
+        private final boolean strict;
+
+        public Result(String id, String path, Status outcome,
+                String errorType, long nanos, boolean strict) {
+            this.id = id;
+            this.path = path;
+            this.outcome = outcome;
+            this.errorType = errorType;
+            this.nanos = nanos;
+            this.strict = strict;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public Status getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * Returns the error type for failed tests, see {@link Details}
+         */
+        public String getErrorType() {
+            return errorType;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Returns whether the test was run in strict mode, see
+         * {@link Details}
+         */
+        public boolean isStrict() {
+            return strict;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Persistent record of test runtimes (in nanoseconds) from previous runs,
+ * keyed by test label. The history file is line-oriented (UTF-8), each line
+ * has the form:
+ *
+ * <pre>
+ * label \t nanos
+ * </pre>
+ *
+ * @author André Bargull
+ *
+ */
+public final class RuntimeHistory {
+    private static final String HEADER = "#test262-runtime-history 1";
+
+    private final Path file;
+    private final ConcurrentMap<String, Long> runtimes = new ConcurrentHashMap<>();
+    private volatile boolean modified = false;
+
+    private RuntimeHistory(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the runtime history from {@code file}, a missing or invalid file
+     * results in an empty history
+     */
+    public static RuntimeHistory load(Path file) throws IOException {
+        RuntimeHistory history = new RuntimeHistory(file);
+        history.read();
+        return history;
+    }
+
+    /**
+     * Returns {@code true} if no runtimes are recorded
+     */
+    public boolean isEmpty() {
+        return runtimes.isEmpty();
+    }
+
+    /**
+     * Returns the recorded runtime for {@code label} or
+     * {@code defaultValue} if not present
+     */
+    public long get(String label, long defaultValue) {
+        Long nanos = runtimes.get(label);
+        return nanos != null ? nanos : defaultValue;
+    }
+
+    /**
+     * Returns the average of all recorded runtimes
+     */
+    public long average() {
+        long sum = 0, count = 0;
+        for (long nanos : runtimes.values()) {
+            sum += nanos;
+            count += 1;
+        }
+        return count != 0 ? sum / count : 0;
+    }
+
+    /**
+     * Records the runtime for {@code label}
+     */
+    public void put(String label, long nanos) {
+        runtimes.put(label, nanos);
+        modified = true;
+    }
+
+    private void read() throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file,
+                StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                return;
+            }
+            for (String line; (line = reader.readLine()) != null;) {
+                int tab = line.lastIndexOf('\t');
+                if (tab > 0) {
+                    runtimes.put(line.substring(0, tab),
+                            Long.parseLong(line.substring(tab + 1)));
+                }
+            }
+        } catch (NumberFormatException e) {
+            // corrupt history, start from scratch
+            runtimes.clear();
+        }
+    }
+
+    /**
+     * Writes the history back to disk if it was modified
+     */
+    public synchronized void store() throws IOException {
+        if (!modified) {
+            return;
+        }
+        modified = false;
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp,
+                StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Map.Entry<String, Long> e : new TreeMap<>(runtimes)
+                    .entrySet()) {
+                writer.write(e.getKey());
+                writer.write('\t');
+                writer.write(Long.toString(e.getValue()));
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.io.ByteOrderMark;
+
+/**
+ * Source file which is read and decoded exactly once. The decoded content can
+ * be shared between {@link Test262Info} and the script evaluation. Files
+ * from an opened {@link Corpus} are not read at all, their content is a view
+ * into the memory-mapped corpus.
+ *
+ * @author André Bargull
+ *
+ */
+public final class SourceFile {
+    private static final ByteOrderMark[] BOMS = { ByteOrderMark.UTF_8,
+            ByteOrderMark.UTF_16LE, ByteOrderMark.UTF_16BE };
+
+    private final Path path;
+    private final String charsetName;
+    private final CharSequence content;
+
+    SourceFile(Path path, String charsetName, CharSequence content) {
+        this.path = path;
+        this.charsetName = charsetName;
+        this.content = content;
+    }
+
+    /**
+     * Reads the file and decodes its content, the charset is selected by the
+     * byte order mark if present, otherwise {@code defaultCharset} is used
+     */
+    public static SourceFile read(Path path, String defaultCharset)
+            throws IOException {
+        SourceFile packed = Corpus.lookup(path);
+        if (packed != null) {
+            return packed;
+        }
+        byte[] bytes = Files.readAllBytes(path);
+        String charsetName = defaultCharset;
+        int offset = 0;
+        for (ByteOrderMark bom : BOMS) {
+            if (startsWith(bytes, bom)) {
+                charsetName = bom.getCharsetName();
+                offset = bom.length();
+                break;
+            }
+        }
+        Charset charset = Charset.forName(charsetName);
+        String content = new String(bytes, offset, bytes.length - offset,
+                charset);
+        return new SourceFile(path, charsetName, content);
+    }
+
+    private static boolean startsWith(byte[] bytes, ByteOrderMark bom) {
+        if (bytes.length < bom.length()) {
+            return false;
+        }
+        for (int i = 0, len = bom.length(); i < len; ++i) {
+            if ((bytes[i] & 0xff) != bom.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the file path
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the charset used to decode the file
+     */
+    public String getCharsetName() {
+        return charsetName;
+    }
+
+    /**
+     * Returns the decoded file content
+     */
+    public String getContent() {
+        return content.toString();
+    }
+
+    /**
+     * Returns a new {@link Reader} for the decoded file content, corpus files
+     * are read directly from the mapped buffer
+     */
+    public Reader newReader() {
+        if (content instanceof CharBuffer) {
+            return new CharBufferReader(((CharBuffer) content).duplicate());
+        }
+        return new StringReader(content.toString());
+    }
+
+    private static final class CharBufferReader extends Reader {
+        private final CharBuffer buffer;
+
+        CharBufferReader(CharBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(cbuf, off, n);
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
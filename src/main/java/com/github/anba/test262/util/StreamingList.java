@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Append-only list which is filled by a producer thread while consumers
+ * already iterate over the available elements. Iterators block until the
+ * next element is available or the producer has finished, {@link #size()}
+ * and {@link #get(int)} block until the requested information is known.
+ *
+ * @author André Bargull
+ *
+ */
+public final class StreamingList<E> extends AbstractList<E> {
+    private final List<E> elements = new ArrayList<>();
+    private boolean finished = false;
+    private Throwable failure = null;
+
+    /**
+     * Appends a new element, only called by the producer
+     */
+    @Override
+    public synchronized boolean add(E e) {
+        elements.add(e);
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Marks this list as complete, only called by the producer
+     */
+    public synchronized void finish() {
+        finished = true;
+        notifyAll();
+    }
+
+    /**
+     * Marks this list as complete due to a producer error, the error is
+     * reported to all consumers
+     */
+    public synchronized void fail(Throwable t) {
+        failure = t;
+        finish();
+    }
+
+    /**
+     * Returns {@code true} if the producer has finished
+     */
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Blocks until element {@code index} is available, returns {@code false}
+     * if the producer finished before
+     */
+    private synchronized boolean await(int index) {
+        while (index >= elements.size() && !finished) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+        return index < elements.size();
+    }
+
+    @Override
+    public E get(int index) {
+        if (index < 0 || !await(index)) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        synchronized (this) {
+            return elements.get(index);
+        }
+    }
+
+    @Override
+    public int size() {
+        await(Integer.MAX_VALUE);
+        synchronized (this) {
+            return elements.size();
+        }
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return await(index);
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(index++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -7,22 +7,16 @@
 package com.github.anba.test262.util;
 
 import static java.util.Objects.requireNonNull;
-import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Reader;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Iterator;
 import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.commons.io.ByteOrderMark;
 import org.apache.commons.io.LineIterator;
-import org.apache.commons.io.input.BOMInputStream;
 
 /**
  * Parses and returns test case information from test262 js-doc comments
@@ -47,6 +41,15 @@ public class Test262Info {
         // private constructor
     }
 
+    Test262Info(String description, String errorType, boolean onlyStrict,
+            boolean noStrict, boolean negative) {
+        this.description = description;
+        this.errorType = errorType;
+        this.onlyStrict = onlyStrict;
+        this.noStrict = noStrict;
+        this.negative = negative;
+    }
+
     /**
      * Returns the description for the test case
      */
@@ -104,10 +107,16 @@ public class Test262Info {
      */
     public static Test262Info from(Path path, String defaultCharset)
             throws IOException {
+        return from(SourceFile.read(path, defaultCharset));
+    }
+
+    /**
+     * Parses the test-info from the source file and returns a
+     * {@link Test262Info} object
+     */
+    public static Test262Info from(SourceFile source) {
         Test262Info info = new Test262Info();
-        InputStream stream = Files.newInputStream(path);
-        Reader reader = newReader(stream, defaultCharset);
-        try ($LineIterator lines = new $LineIterator(reader)) {
+        try ($LineIterator lines = new $LineIterator(source.newReader())) {
             boolean preamble = true;
             for (String line : iterable(lines)) {
                 if (preamble) {
@@ -197,14 +206,4 @@ public class Test262Info {
             super(reader);
         }
     }
-
-    private static Reader newReader(InputStream stream, String defaultCharset)
-            throws IOException {
-        BOMInputStream bomstream = new BOMInputStream(stream,
-                ByteOrderMark.UTF_8, ByteOrderMark.UTF_16LE,
-                ByteOrderMark.UTF_16BE);
-        String charset = defaultIfNull(bomstream.getBOMCharsetName(),
-                defaultCharset);
-        return new InputStreamReader(bomstream, charset);
-    }
 }
@@ -0,0 +1,256 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Persistent index of parsed {@link Test262Info} objects. Entries are stored
+ * together with the size and modification time of the test file, an entry
+ * becomes invalid when either one changes.
+ * <p>
+ * The index file is line-oriented (UTF-8), each line has the form:
+ *
+ * <pre>
+ * path \t size \t mtime \t flags \t errorType \t description
+ * </pre>
+ *
+ * @author André Bargull
+ *
+ */
+public final class Test262InfoIndex {
+    private static final String HEADER = "#test262-info-index 1";
+    private static final int NEGATIVE = 0x1, ONLY_STRICT = 0x2,
+            NO_STRICT = 0x4;
+
+    private static final ConcurrentMap<Path, Test262InfoIndex> indices = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean modified = false;
+
+    private static final class Entry {
+        final long size;
+        final long mtime;
+        final Test262Info info;
+
+        Entry(long size, long mtime, Test262Info info) {
+            this.size = size;
+            this.mtime = mtime;
+            this.info = info;
+        }
+    }
+
+    private Test262InfoIndex(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns the shared index for {@code file}, the index is loaded on first
+     * access
+     */
+    public static Test262InfoIndex open(Path file) throws IOException {
+        file = file.toAbsolutePath().normalize();
+        Test262InfoIndex index = indices.get(file);
+        if (index == null) {
+            synchronized (indices) {
+                index = indices.get(file);
+                if (index == null) {
+                    index = new Test262InfoIndex(file);
+                    index.load();
+                    indices.put(file, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Writes all modified indices back to disk
+     */
+    public static void storeAll() throws IOException {
+        for (Test262InfoIndex index : indices.values()) {
+            index.store();
+        }
+    }
+
+    /**
+     * Returns the indexed {@link Test262Info} for {@code path} or
+     * {@code null} if the entry is missing or out of date
+     */
+    public Test262Info get(Path path) throws IOException {
+        Entry entry = entries.get(key(path));
+        if (entry == null) {
+            return null;
+        }
+        BasicFileAttributes attrs = Files.readAttributes(path,
+                BasicFileAttributes.class);
+        if (entry.size != attrs.size()
+                || entry.mtime != attrs.lastModifiedTime().toMillis()) {
+            return null;
+        }
+        return entry.info;
+    }
+
+    /**
+     * Adds or replaces the index entry for {@code path}
+     */
+    public void put(Path path, Test262Info info) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(path,
+                BasicFileAttributes.class);
+        entries.put(key(path), new Entry(attrs.size(), attrs
+                .lastModifiedTime().toMillis(), info));
+        modified = true;
+    }
+
+    private static String key(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    private void load() throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file,
+                StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                // unknown format, rebuild index from scratch
+                return;
+            }
+            for (String line; (line = reader.readLine()) != null;) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 6) {
+                    continue;
+                }
+                int flags = Integer.parseInt(fields[3]);
+                Test262Info info = new Test262Info(unescape(fields[5]),
+                        unescape(fields[4]), (flags & ONLY_STRICT) != 0,
+                        (flags & NO_STRICT) != 0, (flags & NEGATIVE) != 0);
+                entries.put(unescape(fields[0]),
+                        new Entry(Long.parseLong(fields[1]), Long
+                                .parseLong(fields[2]), info));
+            }
+        } catch (NumberFormatException e) {
+            // corrupt index, rebuild index from scratch
+            entries.clear();
+        }
+    }
+
+    /**
+     * Writes the index back to disk if it was modified
+     */
+    public synchronized void store() throws IOException {
+        if (!modified) {
+            return;
+        }
+        modified = false;
+        Path dir = file.getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp,
+                StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                Test262Info info = entry.info;
+                int flags = (info.isNegative() ? NEGATIVE : 0)
+                        | (info.isOnlyStrict() ? ONLY_STRICT : 0)
+                        | (info.isNoStrict() ? NO_STRICT : 0);
+                writer.write(escape(e.getKey()));
+                writer.write('\t');
+                writer.write(Long.toString(entry.size));
+                writer.write('\t');
+                writer.write(Long.toString(entry.mtime));
+                writer.write('\t');
+                writer.write(Integer.toString(flags));
+                writer.write('\t');
+                writer.write(escape(info.getErrorType()));
+                writer.write('\t');
+                writer.write(escape(info.getDescription()));
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Escapes tab, line terminators and backslash, {@code null} is mapped to
+     * the empty string
+     */
+    static String escape(String s) {
+        if (s == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0, len = s.length(); i < len; ++i) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            default:
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Inverse operation of {@link #escape(String)}
+     */
+    static String unescape(String s) {
+        if (s.isEmpty()) {
+            return null;
+        }
+        if (s.indexOf('\\') < 0) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0, len = s.length(); i < len; ++i) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < len) {
+                switch (c = s.charAt(++i)) {
+                case 't':
+                    c = '\t';
+                    break;
+                case 'n':
+                    c = '\n';
+                    break;
+                case 'r':
+                    c = '\r';
+                    break;
+                default:
+                    break;
+                }
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,22 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+/**
+ * Thrown when a test exceeds its instruction budget or its deadline. This is
+ * an {@link Error}, so the script cannot catch it.
+ * 
+ * @author André Bargull
+ * 
+ */
+public class Test262TimeoutError extends Error {
+    private static final long serialVersionUID = 4163364458925402187L;
+
+    public Test262TimeoutError(String message) {
+        super(message);
+    }
+}
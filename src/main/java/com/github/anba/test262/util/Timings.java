@@ -0,0 +1,370 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Per-test timing instrumentation. Time is accounted exclusively per
+ * {@link Phase}, i.e. nested phases are not counted for their enclosing
+ * phase. All methods return immediately unless timings were enabled through
+ * {@link #enable()}.
+ *
+ * @author André Bargull
+ *
+ */
+public final class Timings {
+    private Timings() {
+    }
+
+    /**
+     * Measured test phases
+     */
+    public enum Phase {
+        /** file I/O and decoding */
+        READ,
+        /** test case information parsing */
+        INFO,
+        /** harness include */
+        INCLUDE,
+        /** javascript parser */
+        PARSE,
+        /** IR transformation */
+        TRANSFORM,
+        /** bytecode compilation */
+        COMPILE,
+        /** script execution */
+        EXECUTE
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private static volatile boolean enabled = false;
+    private static final Queue<Record> records = new ConcurrentLinkedQueue<>();
+    private static final ThreadLocal<Record> current = new ThreadLocal<>();
+    private static final Map<String, Long> counters = new ConcurrentSkipListMap<>();
+
+    /**
+     * Timing record for a single test
+     */
+    private static final class Record {
+        final String test;
+        final String path;
+        final long[] nanos = new long[PHASES.length];
+        final Phase[] stack = new Phase[16];
+        int depth = 0;
+        long start, mark, total;
+        long allocated;
+
+        Record(String test, String path) {
+            this.test = test;
+            this.path = path;
+            this.start = this.mark = System.nanoTime();
+        }
+
+        long other() {
+            long sum = 0;
+            for (long n : nanos) {
+                sum += n;
+            }
+            return Math.max(total - sum, 0);
+        }
+    }
+
+    /**
+     * Enables timing instrumentation
+     */
+    public static void enable() {
+        enabled = true;
+    }
+
+    /**
+     * Returns {@code true} if timing instrumentation is enabled
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts a new timing record for the current thread
+     */
+    public static void begin(String test, String path) {
+        if (!enabled) {
+            return;
+        }
+        current.set(new Record(test, path));
+    }
+
+    /**
+     * Finishes the timing record for the current thread
+     */
+    public static void end() {
+        if (!enabled) {
+            return;
+        }
+        Record record = current.get();
+        if (record != null) {
+            current.remove();
+            record.total = System.nanoTime() - record.start;
+            records.add(record);
+        }
+    }
+
+    /**
+     * Enters {@code phase}, every call must be paired with {@link #exit()}
+     */
+    public static void enter(Phase phase) {
+        if (!enabled) {
+            return;
+        }
+        Record record = current.get();
+        if (record == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        int depth = record.depth;
+        if (depth > 0) {
+            Phase outer = record.stack[depth - 1];
+            record.nanos[outer.ordinal()] += now - record.mark;
+        }
+        if (depth < record.stack.length) {
+            record.stack[depth] = phase;
+        }
+        record.depth = depth + 1;
+        record.mark = now;
+    }
+
+    /**
+     * Exits the current phase
+     */
+    public static void exit() {
+        if (!enabled) {
+            return;
+        }
+        Record record = current.get();
+        if (record == null || record.depth == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        int depth = record.depth - 1;
+        if (depth < record.stack.length) {
+            Phase phase = record.stack[depth];
+            record.nanos[phase.ordinal()] += now - record.mark;
+        }
+        record.depth = depth;
+        record.mark = now;
+    }
+
+    /**
+     * Adds {@code bytes} to the allocated bytes of the current test
+     */
+    public static void allocated(long bytes) {
+        if (!enabled) {
+            return;
+        }
+        Record record = current.get();
+        if (record != null) {
+            record.allocated += bytes;
+        }
+    }
+
+    /**
+     * Sets the run-wide counter {@code name}, e.g. cache statistics, which is
+     * included in the summary
+     */
+    public static void counter(String name, long value) {
+        if (!enabled) {
+            return;
+        }
+        counters.put(name, value);
+    }
+
+    /**
+     * Writes the per-test timings to "timings.csv" and a summary with the
+     * {@code top} slowest tests, percentiles per phase and the counters to
+     * "timings.json" into {@code dir}
+     */
+    public static void report(Path dir, int top) throws IOException {
+        List<Record> all = new ArrayList<>(records);
+        Collections.sort(all, new Comparator<Record>() {
+            @Override
+            public int compare(Record r1, Record r2) {
+                return Long.compare(r2.total, r1.total);
+            }
+        });
+        Files.createDirectories(dir);
+        try (BufferedWriter writer = Files.newBufferedWriter(
+                dir.resolve("timings.csv"), StandardCharsets.UTF_8)) {
+            writeCSV(writer, all);
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(
+                dir.resolve("timings.json"), StandardCharsets.UTF_8)) {
+            writeSummary(writer, all, top);
+        }
+    }
+
+    private static String name(Phase phase) {
+        return phase.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static void writeCSV(Writer writer, List<Record> all)
+            throws IOException {
+        writer.write("test,path,total");
+        for (Phase phase : PHASES) {
+            writer.write(",");
+            writer.write(name(phase));
+        }
+        writer.write(",other,allocated\n");
+        for (Record r : all) {
+            writer.write(csv(r.test));
+            writer.write(",");
+            writer.write(csv(r.path));
+            writer.write(",");
+            writer.write(Long.toString(r.total));
+            for (long n : r.nanos) {
+                writer.write(",");
+                writer.write(Long.toString(n));
+            }
+            writer.write(",");
+            writer.write(Long.toString(r.other()));
+            writer.write(",");
+            writer.write(Long.toString(r.allocated));
+            writer.write("\n");
+        }
+    }
+
+    private static void writeSummary(Writer writer, List<Record> all, int top)
+            throws IOException {
+        long[] totals = new long[all.size()];
+        for (int i = 0; i < totals.length; ++i) {
+            totals[i] = all.get(i).total;
+        }
+        writer.write("{\n");
+        writer.write(String.format("  \"tests\": %d,\n", all.size()));
+        writer.write("  \"phases\": {\n");
+        writer.write("    \"total\": " + percentiles(totals));
+        for (Phase phase : PHASES) {
+            long[] values = new long[all.size()];
+            for (int i = 0; i < values.length; ++i) {
+                values[i] = all.get(i).nanos[phase.ordinal()];
+            }
+            writer.write(",\n    " + json(name(phase)) + ": "
+                    + percentiles(values));
+        }
+        writer.write("\n  },\n");
+        long[] allocated = new long[all.size()];
+        for (int i = 0; i < allocated.length; ++i) {
+            allocated[i] = all.get(i).allocated;
+        }
+        writer.write("  \"allocated\": " + percentiles(allocated) + ",\n");
+        writer.write("  \"counters\": {");
+        String sep = "\n";
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            writer.write(String.format("%s    %s: %d", sep,
+                    json(counter.getKey()), counter.getValue()));
+            sep = ",\n";
+        }
+        writer.write(counters.isEmpty() ? "},\n" : "\n  },\n");
+        writer.write("  \"slowest\": [");
+        for (int i = 0, len = Math.min(top, all.size()); i < len; ++i) {
+            Record r = all.get(i);
+            writer.write(i == 0 ? "\n" : ",\n");
+            writer.write(String.format(
+                    "    {\"test\": %s, \"path\": %s, \"total\": %d",
+                    json(r.test), json(r.path), r.total));
+            for (Phase phase : PHASES) {
+                writer.write(String.format(", %s: %d", json(name(phase)),
+                        r.nanos[phase.ordinal()]));
+            }
+            writer.write(String.format(", \"allocated\": %d}", r.allocated));
+        }
+        writer.write("\n  ]\n}\n");
+    }
+
+    /**
+     * Returns sum, p50, p90, p99 and max of {@code values} as a json object
+     */
+    private static String percentiles(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (long v : sorted) {
+            sum += v;
+        }
+        return String.format(
+                "{\"sum\": %d, \"p50\": %d, \"p90\": %d, \"p99\": %d, \"max\": %d}",
+                sum, percentile(sorted, 50), percentile(sorted, 90),
+                percentile(sorted, 99), percentile(sorted, 100));
+    }
+
+    private static long percentile(long[] sorted, int p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.min(Math.max(index, 0), sorted.length - 1)];
+    }
+
+    private static String csv(String s) {
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0) {
+            return s;
+        }
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Returns {@code s} as a quoted json string
+     */
+    static String json(String s) {
+        if (s == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0, len = s.length(); i < len; ++i) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    sb.append(String.format("\\u%04x", (int) c));
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
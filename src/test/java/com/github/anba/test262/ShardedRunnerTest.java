@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+import com.github.anba.test262.ShardedRunner.Shard;
+import com.github.anba.test262.util.ResultLog;
+import com.github.anba.test262.util.ResultLog.Entry;
+import com.github.anba.test262.util.ResultLog.Status;
+import com.github.anba.test262.util.RuntimeHistory;
+
+/**
+ * Shard assignment and merging of the per-shard results in
+ * {@link ShardedRunner}
+ *
+ * @author André Bargull
+ *
+ */
+public final class ShardedRunnerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Object[] test(String label, String path) {
+        return new Object[] { label, path };
+    }
+
+    private static Description description(String label) {
+        return Description.createTestDescription(Test262.class, "test["
+                + label + "]");
+    }
+
+    private Shard shard(int exitCode, String... labels) throws IOException {
+        Shard shard = new Shard(1);
+        shard.dir = folder.newFolder("shard-1").toPath();
+        shard.exitCode = exitCode;
+        for (String label : labels) {
+            shard.tests.add(test(label, label + ".js"));
+        }
+        return shard;
+    }
+
+    private static List<String> labels(Shard shard) {
+        List<String> labels = new ArrayList<>();
+        for (Object[] test : shard.tests) {
+            labels.add((String) test[0]);
+        }
+        return labels;
+    }
+
+    private static void assertEntry(Entry entry, Status status, String name,
+            String message) {
+        assertEquals(status, entry.getStatus());
+        assertEquals(name, entry.getName());
+        assertEquals(Test262.class.getName(), entry.getClassName());
+        assertEquals(message, entry.getMessage());
+    }
+
+    @Test
+    public void crashedShardReportsTestInProgress() throws Exception {
+        Shard shard = shard(137, "a", "b", "c", "d");
+        Path results = shard.file("results.log");
+        try (ResultLog.Writer log = ResultLog.newWriter(results)) {
+            log.testStarted(description("a"));
+            log.testFinished(description("a"));
+            log.testStarted(description("b"));
+            log.testFailure(new Failure(description("b"),
+                    new AssertionError("failed")));
+            log.testFinished(description("b"));
+            log.testStarted(description("c"));
+        }
+        // line truncated by the crash
+        Files.write(results, "passed\tcom.github".getBytes(
+                StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        List<Entry> merged = ShardedRunner.merge(shard);
+        assertFalse(shard.finished);
+        assertEquals(4, merged.size());
+        assertEntry(merged.get(0), Status.PASSED, "test[a]", null);
+        assertEntry(merged.get(1), Status.FAILURE, "test[b]", "failed");
+        assertEquals(AssertionError.class.getName(), merged.get(1).getType());
+        assertEntry(merged.get(2), Status.ERROR, "test[c]",
+                "shard 1 exited with code 137 while running this test");
+        assertEntry(merged.get(3), Status.ERROR, "test[d]",
+                "not run, shard 1 exited with code 137");
+    }
+
+    @Test
+    public void finishedShardReportsMissingTests() throws Exception {
+        Shard shard = shard(1, "a", "b");
+        try (ResultLog.Writer log = ResultLog.newWriter(shard
+                .file("results.log"))) {
+            log.testStarted(description("b"));
+            log.testFinished(description("b"));
+            log.testRunFinished(new Result());
+        }
+
+        List<Entry> merged = ShardedRunner.merge(shard);
+        assertTrue(shard.finished);
+        assertEquals(2, merged.size());
+        // reported in test order, not in execution order
+        assertEntry(merged.get(0), Status.ERROR, "test[a]", "not run");
+        assertEntry(merged.get(1), Status.PASSED, "test[b]", null);
+    }
+
+    @Test
+    public void missingResultLogReportsAllTests() throws Exception {
+        Shard shard = shard(1, "a");
+        List<Entry> merged = ShardedRunner.merge(shard);
+        assertFalse(shard.finished);
+        assertEquals(1, merged.size());
+        assertEntry(merged.get(0), Status.ERROR, "test[a]",
+                "not run, shard 1 exited with code 1");
+    }
+
+    @Test
+    public void balancedByHistory() throws IOException {
+        RuntimeHistory history = RuntimeHistory.load(folder.getRoot()
+                .toPath().resolve("history"));
+        history.put("a", 10);
+        history.put("a (strict)", 10);
+        history.put("b", 15);
+        history.put("c", 5);
+        // "d" has no history and is weighted with the average of 10
+        List<Object[]> tests = Arrays.asList(test("a", "a.js"),
+                test("a (strict)", "a.js"), test("b", "b.js"),
+                test("c", "c.js"), test("d", "d.js"));
+
+        List<Shard> shards = ShardedRunner.balanced(tests, 2, history);
+        assertEquals(Arrays.asList("a", "a (strict)", "c"),
+                labels(shards.get(0)));
+        assertEquals(Arrays.asList("b", "d"), labels(shards.get(1)));
+        assertEquals(25, shards.get(0).load);
+        assertEquals(25, shards.get(1).load);
+    }
+
+    @Test
+    public void roundRobinKeepsVariantsTogether() throws IOException {
+        List<Object[]> tests = Arrays.asList(test("a", "a.js"),
+                test("a (strict)", "a.js"), test("b", "b.js"),
+                test("b (strict)", "b.js"), test("c", "c.js"));
+        RuntimeHistory empty = RuntimeHistory.load(folder.getRoot().toPath()
+                .resolve("missing"));
+
+        List<Shard> shards = ShardedRunner.balanced(tests, 2, empty);
+        assertEquals(Arrays.asList("a", "a (strict)", "c"),
+                labels(shards.get(0)));
+        assertEquals(Arrays.asList("b", "b (strict)"), labels(shards.get(1)));
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.environment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Locale;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Per-test state of a reused {@link RhinoContext}
+ *
+ * @author André Bargull
+ *
+ */
+public final class RhinoContextTest {
+    private static Object eval(Context cx, Scriptable scope, String source) {
+        return cx.evaluateString(scope, source, "test", 1, null);
+    }
+
+    @Test
+    public void resetRestoresNewContextState() {
+        final ContextFactory factory = new ContextFactory() {
+            @Override
+            protected Context makeContext() {
+                RhinoContext context = new RhinoContext(this);
+                context.setLanguageVersion(Context.VERSION_1_8);
+                context.saveInitialState();
+                return context;
+            }
+        };
+        assertTrue(RhinoContext.isResettable());
+
+        RhinoContext cx = (RhinoContext) factory.enterContext();
+        try {
+            Scriptable scope = cx.initStandardObjects();
+            eval(cx, scope, "/(a)b/.exec('xab')");
+            assertEquals("a", Context.toString(eval(cx, scope, "RegExp.$1")));
+            cx.putThreadLocal("key", "value");
+            cx.setLanguageVersion(Context.VERSION_1_5);
+            cx.setOptimizationLevel(-1);
+            cx.setLocale(Locale.JAPANESE);
+
+            cx.reset();
+
+            scope = cx.initStandardObjects();
+            assertEquals("", Context.toString(eval(cx, scope, "RegExp.$1")));
+            assertNull(cx.getThreadLocal("key"));
+            assertEquals(Context.VERSION_1_8, cx.getLanguageVersion());
+            assertEquals(0, cx.getOptimizationLevel());
+            assertEquals(Locale.getDefault(), cx.getLocale());
+        } finally {
+            Context.exit();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Pack and map round-trip of the {@link Corpus} file format
+ *
+ * @author André Bargull
+ *
+ */
+public final class CorpusTest {
+    private static final String TEST_SOURCE = "/**\n"
+            + " * @description Gr\u00fc\u00dfe aus \u00e9t\u00e9\n"
+            + " * @negative SyntaxError\n" + " * @onlyStrict\n" + " */\n"
+            + "var s = \"\u00fc\u20ac\ud83d\ude00\";\n";
+    private static final String LIB_SOURCE = "function $ERROR(m) {}\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path write(String name, String content) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String readAll(Reader reader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] cbuf = new char[7];
+        for (int n; (n = reader.read(cbuf, 0, cbuf.length)) != -1;) {
+            sb.append(cbuf, 0, n);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        Path test = write("S1.1_A1.js", TEST_SOURCE);
+        Path empty = write("S1.1_A2.js", "");
+        Path lib = write("sta.js", LIB_SOURCE);
+        Path file = folder.getRoot().toPath().resolve("corpus.bin");
+
+        Corpus.pack(file, Arrays.asList(test, empty),
+                Collections.singletonList(lib), "UTF-8");
+        Corpus corpus = Corpus.open(file);
+
+        assertEquals(Arrays.asList(test.toAbsolutePath(),
+                empty.toAbsolutePath()), corpus.tests());
+
+        SourceFile source = SourceFile.read(test, "ISO-8859-1");
+        assertEquals("UTF-8", source.getCharsetName());
+        assertEquals(TEST_SOURCE, source.getContent());
+        assertEquals(TEST_SOURCE, readAll(source.newReader()));
+        assertEquals("", SourceFile.read(empty, "UTF-8").getContent());
+        assertEquals(LIB_SOURCE, SourceFile.read(lib, "UTF-8").getContent());
+
+        Test262Info info = Corpus.lookupInfo(test);
+        assertNotNull(info);
+        assertEquals("Gr\u00fc\u00dfe aus \u00e9t\u00e9",
+                info.getDescription());
+        assertEquals("SyntaxError", info.getErrorType());
+        assertTrue(info.isNegative());
+        assertTrue(info.isOnlyStrict());
+        assertFalse(info.isNoStrict());
+
+        Test262Info emptyInfo = Corpus.lookupInfo(empty);
+        assertNotNull(emptyInfo);
+        assertNull(emptyInfo.getDescription());
+        assertNull(emptyInfo.getErrorType());
+        assertFalse(emptyInfo.isNegative());
+
+        assertNull(Corpus.lookupInfo(lib));
+    }
+
+    @Test
+    public void changedFilesAreReadFromDisk() throws IOException {
+        Path test = write("S1.1_A3.js", TEST_SOURCE);
+        Path lib = write("fnGlobalObject.js", LIB_SOURCE);
+        Path file = folder.getRoot().toPath().resolve("corpus.bin");
+
+        Corpus.pack(file, Collections.singletonList(test),
+                Collections.singletonList(lib), "UTF-8");
+        Corpus.open(file);
+
+        String edited = "/**\n * @description edited\n */\n";
+        FileTime modified = Files.getLastModifiedTime(test);
+        write("S1.1_A3.js", edited);
+        Files.setLastModifiedTime(test,
+                FileTime.fromMillis(modified.toMillis() + 10000));
+        // same size, only the modification time differs
+        String editedLib = LIB_SOURCE.replace('m', 'n');
+        FileTime libModified = Files.getLastModifiedTime(lib);
+        write("fnGlobalObject.js", editedLib);
+        Files.setLastModifiedTime(lib,
+                FileTime.fromMillis(libModified.toMillis() + 10000));
+
+        assertNull(Corpus.lookupInfo(test));
+        assertEquals(edited, SourceFile.read(test, "UTF-8").getContent());
+        assertEquals("edited", Test262Info.from(test, "UTF-8")
+                .getDescription());
+        assertEquals(editedLib, SourceFile.read(lib, "UTF-8").getContent());
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Matching and cache invalidation of {@link ExclusionMatcher}
+ *
+ * @author André Bargull
+ *
+ */
+public final class ExclusionMatcherTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path writeExcludeList(String name, String... ids)
+            throws IOException {
+        StringBuilder sb = new StringBuilder("<excludeList>\n");
+        for (String id : ids) {
+            sb.append("  <test id=\"").append(id)
+                    .append("\"><reason>reason</reason></test>\n");
+        }
+        sb.append("</excludeList>\n");
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static void touch(Path file, FileTime time) throws IOException {
+        Files.setLastModifiedTime(file, time);
+    }
+
+    private static FileTime later(Path file) throws IOException {
+        return FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis()
+                + 10000);
+    }
+
+    @Test
+    public void matchesIdsAndPatterns() throws IOException {
+        Path first = writeExcludeList("first.xml", "S8.1_A1", "S8.1_A2");
+        Path second = writeExcludeList("second.xml", "S15.1_A1");
+        ExclusionMatcher matcher = ExclusionMatcher.load(Arrays.asList(
+                first.toString(), "", second.toString()), Arrays.asList(
+                "^ch08/.*", "", "S12_A\\d{1,2}"), null);
+
+        assertEquals(3, matcher.size());
+        assertTrue(matcher.isExcluded("S8.1_A1"));
+        assertTrue(matcher.isExcluded("S15.1_A1"));
+        assertFalse(matcher.isExcluded("S8.1_A3"));
+        assertTrue(matcher.matches("ch08/8.1/S8.1_A3.js"));
+        assertTrue(matcher.matches("S12_A10"));
+        assertFalse(matcher.matches("S12_A100"));
+        assertFalse(matcher.matches("ch15/S15_A1.js"));
+
+        ExclusionMatcher empty = ExclusionMatcher.load(emptyList(),
+                emptyList(), null);
+        assertEquals(0, empty.size());
+        assertFalse(empty.matches(""));
+    }
+
+    @Test
+    public void unchangedStampReusesCache() throws IOException {
+        Path exclude = writeExcludeList("exclude.xml", "S8.1_A1");
+        Path cache = folder.getRoot().toPath().resolve("cache/exclude.ser");
+        List<String> files = Arrays.asList(exclude.toString());
+        List<String> patterns = Arrays.asList("^x$");
+
+        assertTrue(ExclusionMatcher.load(files, patterns, cache).isExcluded(
+                "S8.1_A1"));
+        assertTrue(Files.isRegularFile(cache));
+
+        // same size and modification time, so the cached matcher is used
+        FileTime modified = Files.getLastModifiedTime(exclude);
+        writeExcludeList("exclude.xml", "S8.1_A2");
+        touch(exclude, modified);
+        ExclusionMatcher cached = ExclusionMatcher.load(files, patterns, cache);
+        assertTrue(cached.isExcluded("S8.1_A1"));
+        assertFalse(cached.isExcluded("S8.1_A2"));
+    }
+
+    @Test
+    public void changedFileInvalidatesCache() throws IOException {
+        Path exclude = writeExcludeList("exclude.xml", "S8.1_A1");
+        Path cache = folder.getRoot().toPath().resolve("exclude.ser");
+        List<String> files = Arrays.asList(exclude.toString());
+        List<String> patterns = emptyList();
+        ExclusionMatcher.load(files, patterns, cache);
+
+        // same size, only the modification time differs
+        FileTime modified = later(exclude);
+        writeExcludeList("exclude.xml", "S8.1_A2");
+        touch(exclude, modified);
+        ExclusionMatcher matcher = ExclusionMatcher.load(files, patterns,
+                cache);
+        assertFalse(matcher.isExcluded("S8.1_A1"));
+        assertTrue(matcher.isExcluded("S8.1_A2"));
+
+        // same modification time, only the size differs
+        writeExcludeList("exclude.xml", "S8.1_A20");
+        touch(exclude, modified);
+        matcher = ExclusionMatcher.load(files, patterns, cache);
+        assertFalse(matcher.isExcluded("S8.1_A2"));
+        assertTrue(matcher.isExcluded("S8.1_A20"));
+
+        // removed file
+        Files.delete(exclude);
+        Path other = writeExcludeList("other.xml", "S9_A1");
+        matcher = ExclusionMatcher.load(Arrays.asList(other.toString()),
+                patterns, cache);
+        assertEquals(1, matcher.size());
+        assertTrue(matcher.isExcluded("S9_A1"));
+    }
+
+    @Test
+    public void changedPatternsInvalidateCache() throws IOException {
+        Path cache = folder.getRoot().toPath().resolve("exclude.ser");
+        List<String> files = emptyList();
+        assertTrue(ExclusionMatcher.load(files, Arrays.asList("^a$"), cache)
+                .matches("a"));
+
+        ExclusionMatcher matcher = ExclusionMatcher.load(files,
+                Arrays.asList("^b$"), cache);
+        assertFalse(matcher.matches("a"));
+        assertTrue(matcher.matches("b"));
+
+        matcher = ExclusionMatcher.load(files, Arrays.asList("^b$", "^c$"),
+                cache);
+        assertTrue(matcher.matches("b"));
+        assertTrue(matcher.matches("c"));
+    }
+
+    @Test
+    public void corruptCacheIsRebuilt() throws IOException {
+        Path exclude = writeExcludeList("exclude.xml", "S8.1_A1");
+        Path cache = folder.getRoot().toPath().resolve("exclude.ser");
+        Files.write(cache, "not a cache".getBytes(StandardCharsets.UTF_8));
+        List<String> files = Arrays.asList(exclude.toString());
+        List<String> patterns = emptyList();
+
+        assertTrue(ExclusionMatcher.load(files, patterns, cache).isExcluded(
+                "S8.1_A1"));
+        // rewritten with the compiled matcher, reused on the next load
+        FileTime modified = Files.getLastModifiedTime(exclude);
+        writeExcludeList("exclude.xml", "S8.1_A2");
+        touch(exclude, modified);
+        assertTrue(ExclusionMatcher.load(files, patterns, cache).isExcluded(
+                "S8.1_A1"));
+    }
+
+    @Test
+    public void fingerprintCoversIdsAndPatterns() throws IOException {
+        Path first = writeExcludeList("first.xml", "S8.1_A1");
+        Path second = writeExcludeList("second.xml", "S8.1_A2");
+        Path cache = folder.getRoot().toPath().resolve("exclude.ser");
+        List<String> files = Arrays.asList(first.toString());
+        String fingerprint = ExclusionMatcher.load(files,
+                Arrays.asList("^a$"), null).fingerprint();
+
+        // deserialized matchers compute the same fingerprint
+        ExclusionMatcher.load(files, Arrays.asList("^a$"), cache);
+        assertEquals(fingerprint,
+                ExclusionMatcher.load(files, Arrays.asList("^a$"), cache)
+                        .fingerprint());
+        assertFalse(fingerprint.equals(ExclusionMatcher.load(files,
+                Arrays.asList("^b$"), null).fingerprint()));
+        assertFalse(fingerprint.equals(ExclusionMatcher.load(
+                Arrays.asList(second.toString()), Arrays.asList("^a$"), null)
+                .fingerprint()));
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.internal.AssumptionViolatedException;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.anba.test262.util.IncrementalState.Result;
+import com.github.anba.test262.util.IncrementalState.Status;
+
+/**
+ * Persistence and replay of {@link IncrementalState} results
+ *
+ * @author André Bargull
+ *
+ */
+public final class IncrementalStateTest {
+    private static final List<Path> NO_INCLUDES = Collections.emptyList();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path write(String name, String content) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * {@link IncrementalState#open(Path)} shares the state per file, reload
+     * the stored state from a copy
+     */
+    private IncrementalState reload(Path file) throws IOException {
+        Path copy = folder.newFolder().toPath().resolve("state");
+        Files.copy(file, copy);
+        return IncrementalState.open(copy);
+    }
+
+    @Test
+    public void storedStateIsReloaded() throws IOException {
+        Path test = write("S1.1_A1.js", "/* test */");
+        Path other = write("S1.1_A2.js", "/* other */");
+        Path sta = write("sta.js", "function $ERROR() {}");
+        Path lib = write("lib.js", "function fnGlobalObject() {}");
+        List<Path> includes = Arrays.asList(sta, lib);
+        Path file = folder.getRoot().toPath().resolve("state");
+
+        IncrementalState state = IncrementalState.open(file);
+        assertSame(state, IncrementalState.open(file));
+        state.put(test, new Result("f1", includes, Status.PASSED, null));
+        state.put(test, "strict", new Result("f2", includes, Status.FAILED,
+                "line 1\n\tat \\ line 2"));
+        state.put(other, new Result("f3", NO_INCLUDES, Status.SKIPPED,
+                "skipped"));
+        state.put(other, "strict", new Result("f4", NO_INCLUDES,
+                Status.PASSED, null));
+        state.remove(other, "strict");
+        state.store();
+
+        IncrementalState reloaded = reload(file);
+        Result passed = reloaded.get(test);
+        assertNotNull(passed);
+        assertEquals("f1", passed.getFingerprint());
+        assertEquals(includes, passed.getIncludes());
+        assertEquals(Status.PASSED, passed.getStatus());
+        assertNull(passed.getMessage());
+
+        Result failed = reloaded.get(test, "strict");
+        assertNotNull(failed);
+        assertEquals("f2", failed.getFingerprint());
+        assertEquals(includes, failed.getIncludes());
+        assertEquals(Status.FAILED, failed.getStatus());
+        assertEquals("line 1\n\tat \\ line 2", failed.getMessage());
+
+        Result skipped = reloaded.get(other);
+        assertNotNull(skipped);
+        assertEquals(NO_INCLUDES, skipped.getIncludes());
+        assertEquals(Status.SKIPPED, skipped.getStatus());
+        assertNull(reloaded.get(other, "strict"));
+    }
+
+    @Test
+    public void replayReportsCachedStatus() {
+        new Result("f", NO_INCLUDES, Status.PASSED, null).replay();
+        try {
+            new Result("f", NO_INCLUDES, Status.FAILED, "expected").replay();
+            fail();
+        } catch (AssertionError e) {
+            assertEquals("(cached result) expected", e.getMessage());
+        }
+        try {
+            new Result("f", NO_INCLUDES, Status.SKIPPED, "excluded").replay();
+            fail();
+        } catch (AssumptionViolatedException e) {
+            assertTrue(e.getMessage().endsWith("(cached result) excluded"));
+        }
+    }
+
+    @Test
+    public void fingerprintCoversAllInputs() throws IOException {
+        Path sta = write("sta.js", "function $ERROR() {}");
+        Path lib = write("lib.js", "function fnGlobalObject() {}");
+        Path missing = folder.getRoot().toPath().resolve("missing.js");
+        List<Path> includes = Arrays.asList(sta, lib);
+        String fingerprint = IncrementalState.fingerprint("source", includes,
+                "UTF-8", "engine");
+
+        assertEquals(fingerprint, IncrementalState.fingerprint("source",
+                includes, "UTF-8", "engine"));
+        for (String other : Arrays.asList(
+                IncrementalState.fingerprint("source2", includes, "UTF-8",
+                        "engine"),
+                IncrementalState.fingerprint("source", includes, "UTF-8",
+                        "engine2"),
+                IncrementalState.fingerprint("source", Arrays.asList(lib, sta),
+                        "UTF-8", "engine"),
+                IncrementalState.fingerprint("source", Arrays.asList(sta),
+                        "UTF-8", "engine"),
+                IncrementalState.fingerprint("source",
+                        Arrays.asList(sta, missing), "UTF-8", "engine"))) {
+            assertFalse(other, fingerprint.equals(other));
+        }
+    }
+
+    @Test
+    public void invalidStateIsIgnored() throws IOException {
+        Path test = write("S1.1_A3.js", "/* test */");
+        Path corrupt = write("corrupt", "#test262-incremental 1\n" + test
+                + "\tf\t\tUNKNOWN\t\n");
+        assertNull(IncrementalState.open(corrupt).get(test));
+
+        Path unknown = write("unknown", "#test262-incremental 0\n" + test
+                + "\tf\t\tPASSED\t\n");
+        assertNull(IncrementalState.open(unknown).get(test));
+    }
+}
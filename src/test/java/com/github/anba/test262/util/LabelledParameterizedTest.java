@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.github.anba.test262.util.LabelledParameterized.Options;
+
+/**
+ * Streaming test discovery and runtime history in
+ * {@link LabelledParameterized}
+ *
+ * @author André Bargull
+ *
+ */
+public final class LabelledParameterizedTest {
+    private static StreamingList<Object[]> params;
+    private static CountDownLatch firstStarted;
+    private static final Queue<String> started = new ConcurrentLinkedQueue<>();
+    private static Path historyFile;
+
+    public static final class Fixture {
+        private final String label;
+
+        public Fixture(String label) {
+            this.label = label;
+        }
+
+        @Parameters
+        public static List<Object[]> params() {
+            return params;
+        }
+
+        @Test
+        public void test() {
+            started.add(label);
+            firstStarted.countDown();
+        }
+    }
+
+    public static final class HistoryFixture {
+        private final String label;
+
+        public HistoryFixture(String label, String path) {
+            this.label = label;
+        }
+
+        @Options
+        public static Configuration options() {
+            Configuration options = new BaseConfiguration();
+            options.setProperty("history", historyFile.toString());
+            return options;
+        }
+
+        @Parameters
+        public static List<Object[]> params() {
+            return Arrays.asList(param("a", "a.js"),
+                    param("a (strict)", "a.js"), param("b", "b.js"),
+                    param("c", "c.js"), param("d", "d.js"));
+        }
+
+        @Test
+        public void test() {
+            started.add(label);
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Object[] param(String label, String path) {
+        return new Object[] { label, path };
+    }
+
+    private static Object[] param(String label) {
+        return new Object[] { label };
+    }
+
+    private Thread run(final LabelledParameterized runner, final Result result) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                RunNotifier notifier = new RunNotifier();
+                notifier.addListener(result.createListener());
+                runner.run(notifier);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void childStartsBeforeDiscoveryFinished() throws Throwable {
+        params = new StreamingList<>();
+        firstStarted = new CountDownLatch(1);
+        started.clear();
+        params.add(param("first"));
+
+        LabelledParameterized runner = new LabelledParameterized(
+                Fixture.class);
+        Result result = new Result();
+        Thread thread = run(runner, result);
+
+        assertTrue(firstStarted.await(10, TimeUnit.SECONDS));
+        assertFalse(params.isFinished());
+
+        params.add(param("second"));
+        params.finish();
+        thread.join(10000);
+
+        assertFalse(thread.isAlive());
+        assertEquals(2, result.getRunCount());
+        assertEquals("[first, second]", started.toString());
+        assertEquals(2, runner.getDescription().getChildren().size());
+    }
+
+    @Test
+    public void filterIsAppliedOnArrival() throws Throwable {
+        params = new StreamingList<>();
+        firstStarted = new CountDownLatch(1);
+        started.clear();
+        params.add(param("first"));
+
+        LabelledParameterized runner = new LabelledParameterized(
+                Fixture.class);
+        runner.filter(new Filter() {
+            @Override
+            public boolean shouldRun(Description description) {
+                return !description.getDisplayName().contains("[first]");
+            }
+
+            @Override
+            public String describe() {
+                return "not first";
+            }
+        });
+        Result result = new Result();
+        Thread thread = run(runner, result);
+
+        params.add(param("second"));
+        assertTrue(firstStarted.await(10, TimeUnit.SECONDS));
+        assertFalse(params.isFinished());
+
+        params.finish();
+        thread.join(10000);
+
+        assertFalse(thread.isAlive());
+        assertEquals(1, result.getRunCount());
+        assertEquals("[second]", started.toString());
+        assertEquals(1, runner.getDescription().getChildren().size());
+    }
+
+    @Test
+    public void longestFirstFromHistory() throws Throwable {
+        historyFile = folder.getRoot().toPath().resolve("history");
+        Files.write(historyFile, Arrays.asList("#test262-runtime-history 1",
+                "a\t5", "a (strict)\t5", "b\t30", "c\t20"),
+                StandardCharsets.UTF_8);
+        started.clear();
+
+        // "d" has no history and is weighted with the average of 15, both
+        // modes of "a.js" are kept together with their combined runtime
+        LabelledParameterized runner = new LabelledParameterized(
+                HistoryFixture.class);
+        Result result = new Result();
+        Thread thread = run(runner, result);
+        thread.join(10000);
+
+        assertFalse(thread.isAlive());
+        assertEquals(5, result.getRunCount());
+        assertEquals("[b, c, d, a, a (strict)]", started.toString());
+
+        // runtimes of this run are recorded, including the new test "d"
+        RuntimeHistory history = RuntimeHistory.load(historyFile);
+        for (String label : Arrays.asList("a", "a (strict)", "b", "c", "d")) {
+            assertTrue(label, history.get(label, -1) > 0);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Parallel and streaming test discovery in {@link Resources}
+ *
+ * @author André Bargull
+ *
+ */
+public final class ResourcesTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private void touch(String name) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[0]);
+    }
+
+    private static List<String> labels(Iterable<Object[]> testcases) {
+        List<String> labels = new ArrayList<>();
+        for (Object[] testcase : testcases) {
+            labels.add((String) testcase[0]);
+        }
+        return labels;
+    }
+
+    @Test
+    public void streamingMatchesParallelWalk() throws IOException {
+        touch("ch15/15.1/S15.1_A1.js");
+        touch("ch15/15.1/S15.1_A2.js");
+        touch("ch15/S15_A1.js");
+        touch("ch08/8.1/S8.1_A1.js");
+        touch("ch08/8.1/S8.1_A1.txt");
+        touch("ch12/12.2/12.2.1/S12.2.1_A1.js");
+        touch("ch12/12.1/S12.1_A1.js");
+        touch("S0_A1.js");
+        String testpath = folder.getRoot().toString();
+        ExclusionMatcher exclusions = ExclusionMatcher.load(emptyList(),
+                emptyList(), null);
+        List<String> variants = Arrays.asList("", " (strict)");
+
+        List<String> expected = Arrays.asList("S0_A1", "S0_A1 (strict)",
+                "S8.1_A1", "S8.1_A1 (strict)", "S12.1_A1",
+                "S12.1_A1 (strict)", "S12.2.1_A1", "S12.2.1_A1 (strict)",
+                "S15.1_A1", "S15.1_A1 (strict)", "S15.1_A2",
+                "S15.1_A2 (strict)", "S15_A1", "S15_A1 (strict)");
+        assertEquals(expected, labels(Resources.collectTestCases(testpath,
+                exclusions, false, variants)));
+
+        StreamingList<Object[]> streamed = Resources.streamTestCases(
+                testpath, exclusions, false, variants);
+        assertEquals(expected, labels(streamed));
+        assertTrue(streamed.isFinished());
+    }
+
+    @Test
+    public void exclusionPatternsAreNotSplit() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("test.properties");
+        Files.write(file, Arrays.asList("test262 = .",
+                "test.suite.t.exclude = a.xml, b.xml",
+                "test.suite.t.exclude_re = ^S\\\\d{1,3}_A1$",
+                "test.suite.u.exclude_re = ^x{2,}$",
+                "test.suite.u.exclude_re = ^y$"), StandardCharsets.UTF_8);
+        Configuration config = Resources.loadConfiguration(file.toString());
+
+        assertEquals(Arrays.asList("a.xml", "b.xml"),
+                config.getList("test.suite.t.exclude"));
+        assertEquals(Arrays.asList("^S\\d{1,3}_A1$"),
+                config.getList("test.suite.t.exclude_re"));
+        assertEquals(Arrays.asList("^x{2,}$", "^y$"),
+                config.getList("test.suite.u.exclude_re"));
+
+        // copied into an overlay file and applied again
+        PropertiesConfiguration overlay = Resources
+                .newPropertiesConfiguration();
+        overlay.setProperty("test.suite.u.exclude_re",
+                config.getProperty("test.suite.u.exclude_re"));
+        overlay.setProperty("test.suite.t.exclude_re",
+                config.getProperty("test.suite.t.exclude_re"));
+        Path overlayFile = folder.getRoot().toPath().resolve(
+                "overlay.properties");
+        try (Writer writer = Files.newBufferedWriter(overlayFile,
+                StandardCharsets.UTF_8)) {
+            overlay.save(writer);
+        }
+        Configuration copy = Resources.loadConfiguration(file.toString());
+        copy.clearProperty("test.suite.t.exclude_re");
+        Resources.applyOverlay(copy, overlayFile.toString());
+        assertTrue(ExclusionMatcher.load(emptyList(),
+                copy.getList("test.suite.t.exclude_re"), null).matches(
+                "S12_A1"));
+        assertEquals(Arrays.asList("^x{2,}$", "^y$"),
+                copy.getList("test.suite.u.exclude_re"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void streamingReportsMissingDirectory() throws IOException {
+        String testpath = folder.getRoot().toPath().resolve("missing")
+                .toString();
+        List<Object[]> streamed = Resources.streamTestCases(testpath,
+                ExclusionMatcher.load(emptyList(), emptyList(), null), false,
+                Arrays.asList(""));
+        streamed.size();
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Persistence of the {@link RuntimeHistory} file format
+ *
+ * @author André Bargull
+ *
+ */
+public final class RuntimeHistoryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void storedHistoryIsSortedAndReloaded() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("dir/history");
+        RuntimeHistory history = RuntimeHistory.load(file);
+        assertTrue(history.isEmpty());
+        history.put("S15.1_A1 (strict)", 300);
+        history.put("S15.1_A1", 200);
+        history.put("S8.1_A1", 100);
+        history.put("tab\tlabel", 400);
+        history.put("S8.1_A1", 150);
+        history.store();
+
+        assertEquals(Arrays.asList("#test262-runtime-history 1",
+                "S15.1_A1\t200", "S15.1_A1 (strict)\t300", "S8.1_A1\t150",
+                "tab\tlabel\t400"), Files.readAllLines(file,
+                StandardCharsets.UTF_8));
+
+        RuntimeHistory reloaded = RuntimeHistory.load(file);
+        assertFalse(reloaded.isEmpty());
+        assertEquals(150, reloaded.get("S8.1_A1", -1));
+        assertEquals(300, reloaded.get("S15.1_A1 (strict)", -1));
+        assertEquals(400, reloaded.get("tab\tlabel", -1));
+        assertEquals(-1, reloaded.get("S8.1_A2", -1));
+        assertEquals((200 + 300 + 150 + 400) / 4, reloaded.average());
+    }
+
+    @Test
+    public void unmodifiedHistoryIsNotWritten() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("history");
+        RuntimeHistory.load(file).store();
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void invalidHistoryIsIgnored() throws IOException {
+        Path corrupt = folder.getRoot().toPath().resolve("corrupt");
+        Files.write(corrupt, Arrays.asList("#test262-runtime-history 1",
+                "S8.1_A1\t100", "S8.1_A2\tnot-a-number"),
+                StandardCharsets.UTF_8);
+        assertTrue(RuntimeHistory.load(corrupt).isEmpty());
+
+        Path unknown = folder.getRoot().toPath().resolve("unknown");
+        Files.write(unknown, Arrays.asList("S8.1_A1\t100"),
+                StandardCharsets.UTF_8);
+        RuntimeHistory history = RuntimeHistory.load(unknown);
+        assertTrue(history.isEmpty());
+        assertEquals(0, history.average());
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2011-2012 André Bargull
+ * Alle Rechte vorbehalten / All Rights Reserved.  Use is subject to license terms.
+ *
+ * <https://github.com/anba/test262-junit>
+ */
+package com.github.anba.test262.util;
+
+import static com.github.anba.test262.util.Test262InfoIndex.escape;
+import static com.github.anba.test262.util.Test262InfoIndex.unescape;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Escaping and persistence of the {@link Test262InfoIndex} file format
+ *
+ * @author André Bargull
+ *
+ */
+public final class Test262InfoIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path write(String name, String content) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void escapeRoundTrip() {
+        for (String s : Arrays.asList("plain", "tab\there", "line\nbreak",
+                "cr\r\nlf", "back\\slash", "\\t is not a tab", "\\",
+                "trailing\\", "\\\\n", "\t\n\r\\")) {
+            String escaped = escape(s);
+            assertFalse(s, escaped.contains("\t"));
+            assertFalse(s, escaped.contains("\n"));
+            assertFalse(s, escaped.contains("\r"));
+            assertEquals(s, unescape(escaped));
+        }
+        assertEquals("a\\tb\\\\tc", escape("a\tb\\tc"));
+    }
+
+    @Test
+    public void nullIsMappedToEmptyString() {
+        assertEquals("", escape(null));
+        assertNull(unescape(""));
+        assertNull(unescape(escape("")));
+    }
+
+    @Test
+    public void storedIndexIsReloaded() throws IOException {
+        Path test = write("S1.1_A1.js", "/* test */");
+        Path other = write("S1.1_A2.js", "/* other */");
+        Path file = folder.getRoot().toPath().resolve("index");
+
+        Test262InfoIndex index = Test262InfoIndex.open(file);
+        index.put(test, new Test262Info("tab\tand\nnewline \\n",
+                "SyntaxError", true, false, true));
+        index.put(other, new Test262Info(null, null, false, true, false));
+        index.store();
+
+        // open() shares the index per file, reload from a copy
+        Path copy = folder.getRoot().toPath().resolve("index-copy");
+        Files.copy(file, copy);
+        Test262InfoIndex reloaded = Test262InfoIndex.open(copy);
+
+        Test262Info info = reloaded.get(test);
+        assertNotNull(info);
+        assertEquals("tab\tand\nnewline \\n", info.getDescription());
+        assertEquals("SyntaxError", info.getErrorType());
+        assertTrue(info.isOnlyStrict());
+        assertFalse(info.isNoStrict());
+        assertTrue(info.isNegative());
+
+        Test262Info otherInfo = reloaded.get(other);
+        assertNotNull(otherInfo);
+        assertNull(otherInfo.getDescription());
+        assertNull(otherInfo.getErrorType());
+        assertFalse(otherInfo.isOnlyStrict());
+        assertTrue(otherInfo.isNoStrict());
+        assertFalse(otherInfo.isNegative());
+    }
+
+    @Test
+    public void changedFileInvalidatesEntry() throws IOException {
+        Path test = write("S1.1_A3.js", "/* test */");
+        Test262InfoIndex index = Test262InfoIndex.open(folder.getRoot()
+                .toPath().resolve("index"));
+        index.put(test, new Test262Info("description", null, false, false,
+                false));
+        assertNotNull(index.get(test));
+
+        // same size, only the modification time differs
+        FileTime modified = Files.getLastModifiedTime(test);
+        write("S1.1_A3.js", "/* TEST */");
+        Files.setLastModifiedTime(test,
+                FileTime.fromMillis(modified.toMillis() + 10000));
+        assertNull(index.get(test));
+    }
+
+    @Test
+    public void corruptIndexIsIgnored() throws IOException {
+        Path test = write("S1.1_A4.js", "/* test */");
+        Path file = write("index", "#test262-info-index 1\n" + test
+                + "\tnot-a-number\t0\t0\t\t\n");
+        assertNull(Test262InfoIndex.open(file).get(test));
+    }
+}